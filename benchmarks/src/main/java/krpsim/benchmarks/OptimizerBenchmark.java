@@ -0,0 +1,119 @@
+package krpsim.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import krpsim.model.CompiledModel;
+import krpsim.optimizer.BeamSearchOptimizer;
+import krpsim.optimizer.BranchAndBoundOptimizer;
+import krpsim.optimizer.GreedyOptimizer;
+import krpsim.optimizer.OptimizationStrategy;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.optimizer.SearchBudget;
+import krpsim.utils.Parser;
+
+/**
+ * End-to-end optimizer runs on every bundled scenario.
+ *
+ * JMH reports the time per run (and the allocation rate with {@code -prof gc});
+ * the score of the last run of each trial is printed when the trial ends, so
+ * speed and quality can be compared side by side. Branch and bound would run
+ * until a wall-clock limit on most scenarios, which the time per run would
+ * only echo, so it expands a fixed number of nodes instead.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class OptimizerBenchmark {
+
+    /**
+     * Compiled scenario plus the score of the last run.
+     */
+    @State(Scope.Thread)
+    public static class Scenario {
+
+        @Param({
+            "krpsim/coffee_shop",
+            "krpsim/ikea",
+            "krpsim/inception",
+            "krpsim/pomme",
+            "krpsim/recre",
+            "krpsim/simple",
+            "krpsim/solar_system",
+            "krpsim/steak",
+            "krpsim/test_relevance",
+            "src/resources/examples/simple.txt"
+        })
+        public String scenario;
+
+        @Param({"1000"})
+        public int maxDelay;
+
+        CompiledModel model;
+        String strategy;
+        double score = Double.NaN;
+
+        @Setup
+        public void setUp() throws Exception {
+            model = CompiledModel.compile(Parser.parse(scenario));
+        }
+
+        OptimizationResult run(OptimizationStrategy optimizer) {
+            OptimizationResult result = optimizer.optimize(model, maxDelay);
+            strategy = optimizer.getName();
+            score = result.score();
+            return result;
+        }
+
+        @TearDown
+        public void report() {
+            System.out.printf("%n# score %s on %s (delay %d): %.1f%n", strategy, scenario, maxDelay, score);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Beam {
+
+        @Param({"4", "16", "64"})
+        public int width;
+    }
+
+    @State(Scope.Thread)
+    public static class BranchAndBound {
+
+        @Param({"20000"})
+        public long nodeLimit;
+
+        @Param({"1"})
+        public int threads;
+    }
+
+    @Benchmark
+    public OptimizationResult greedy(Scenario s) {
+        return s.run(new GreedyOptimizer());
+    }
+
+    @Benchmark
+    public OptimizationResult beamSearch(Scenario s, Beam beam) {
+        return s.run(new BeamSearchOptimizer(beam.width));
+    }
+
+    @Benchmark
+    public OptimizationResult branchAndBound(Scenario s, BranchAndBound bb) {
+        return s.run(new BranchAndBoundOptimizer(SearchBudget.unlimited().withNodeLimit(bb.nodeLimit), bb.threads));
+    }
+}
@@ -0,0 +1,49 @@
+package krpsim.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import krpsim.utils.Parser;
+
+/**
+ * Throughput of {@link Parser#parse} on every bundled scenario.
+ *
+ * Paths are relative to the repository root; run the benchmarks from there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({
+        "krpsim/coffee_shop",
+        "krpsim/ikea",
+        "krpsim/inception",
+        "krpsim/pomme",
+        "krpsim/recre",
+        "krpsim/simple",
+        "krpsim/solar_system",
+        "krpsim/steak",
+        "krpsim/test_relevance",
+        "src/resources/examples/simple.txt"
+    })
+    public String scenario;
+
+    @Benchmark
+    public Parser.Config parse() throws Exception {
+        return Parser.parse(scenario);
+    }
+}
@@ -0,0 +1,83 @@
+package krpsim.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.Simulation;
+import krpsim.utils.Parser;
+
+/**
+ * Cost of one simulation step: every process is checked, the runnable ones
+ * consume their needs and their results are applied.
+ *
+ * {@link #modelStep} runs the raw {@link CompiledModel} primitives on a plain
+ * stock vector; {@link #simulationStep} goes through {@link Simulation}, which
+ * maintains the runnable set and event heap incrementally.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SimulationBenchmark {
+
+    @Param({
+        "krpsim/coffee_shop",
+        "krpsim/ikea",
+        "krpsim/inception",
+        "krpsim/pomme",
+        "krpsim/recre",
+        "krpsim/simple",
+        "krpsim/solar_system",
+        "krpsim/steak",
+        "krpsim/test_relevance",
+        "src/resources/examples/simple.txt"
+    })
+    public String scenario;
+
+    private CompiledModel model;
+    private int[] initial;
+    private int[] stocks;
+
+    @Setup
+    public void setUp() throws Exception {
+        model = CompiledModel.compile(Parser.parse(scenario));
+        initial = model.initialStocks();
+        stocks = initial.clone();
+    }
+
+    @Benchmark
+    public int[] modelStep() {
+        System.arraycopy(initial, 0, stocks, 0, initial.length);
+        for (int p = 0; p < model.processCount(); p++) {
+            if (model.isRunnable(stocks, p)) {
+                model.consume(stocks, p);
+                model.apply(stocks, p);
+            }
+        }
+        return stocks;
+    }
+
+    @Benchmark
+    public Simulation simulationStep() {
+        Simulation sim = new Simulation(model);
+        for (int p = sim.nextRunnable(0); p >= 0; p = sim.nextRunnable(p + 1)) {
+            if (sim.canStart(p)) sim.start(p);
+        }
+        sim.completeAll();
+        return sim;
+    }
+}
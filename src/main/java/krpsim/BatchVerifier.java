@@ -0,0 +1,176 @@
+package krpsim;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+
+/**
+ * Batch mode of {@link KrpsimVerif}: verifies many config/trace pairs in one JVM.
+ *
+ * The pairs come either from a manifest (one "config trace" pair per line,
+ * '#' starts a comment) or from a trace directory, where
+ * {@code <name>_trace.txt} / {@code <name>_trace.krpt} is matched with the
+ * config {@code <name>} (or {@code <name>.txt}) in the configs directory.
+ *
+ * Traces are verified concurrently on a fixed thread pool. Each config is
+ * parsed and compiled once and shared by all of its traces. A pass/fail
+ * line with timing is printed per trace, in input order, followed by a summary.
+ */
+final class BatchVerifier {
+
+    private static final Pattern TRACE_NAME = Pattern.compile("(.+)_trace(\\.txt|\\.krpt)");
+
+    private record Job(Path config, Path trace) {}
+
+    private record Outcome(Job job, boolean passed, long millis, String detail) {}
+
+    /** A compiled config, or the reason it could not be loaded. */
+    private record Loaded(CompiledModel model, String error) {}
+
+    private final Map<Path, Loaded> configs = new ConcurrentHashMap<>();
+
+    private BatchVerifier() {
+    }
+
+    /**
+     * @param args {@code --batch <manifest|dir> [--configs DIR] [--threads N]}
+     * @return true if every trace passed
+     */
+    static boolean run(String[] args) throws IOException, InterruptedException {
+        Path source = Path.of(args[1]);
+        Path configDir = Path.of("krpsim");
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--configs") && i + 1 < args.length) {
+                configDir = Path.of(args[++i]);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                try {
+                    threads = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException ex) {
+                    System.err.println("Warning: threads must be a positive integer. Using default (" + threads + ").");
+                }
+            }
+        }
+
+        List<Job> jobs = Files.isDirectory(source) ? scanDirectory(source, configDir) : readManifest(source);
+        if (jobs.isEmpty()) {
+            System.out.println("No traces found in " + source);
+            return false;
+        }
+        return new BatchVerifier().verifyAll(jobs, threads);
+    }
+
+    private static List<Job> scanDirectory(Path dir, Path configDir) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path trace : files.sorted().toList()) {
+                Matcher m = TRACE_NAME.matcher(trace.getFileName().toString());
+                if (!m.matches() || !Files.isRegularFile(trace)) continue;
+                Path config = configDir.resolve(m.group(1));
+                if (!Files.exists(config)) config = configDir.resolve(m.group(1) + ".txt");
+                jobs.add(new Job(config, trace));
+            }
+        }
+        return jobs;
+    }
+
+    private static List<Job> readManifest(Path manifest) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            int hash = line.indexOf('#');
+            String content = (hash >= 0 ? line.substring(0, hash) : line).trim();
+            if (content.isEmpty()) continue;
+            String[] parts = content.split("\\s+");
+            if (parts.length != 2) {
+                throw new IOException(manifest + ":" + lineNumber + ": expected \"<config> <trace>\"");
+            }
+            jobs.add(new Job(Path.of(parts[0]), Path.of(parts[1])));
+        }
+        return jobs;
+    }
+
+    private boolean verifyAll(List<Job> jobs, int threads) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, jobs.size()));
+        List<Future<Outcome>> futures = new ArrayList<>();
+        try {
+            for (Job job : jobs) {
+                futures.add(pool.submit(() -> verify(job)));
+            }
+
+            int passed = 0;
+            for (Future<Outcome> f : futures) {
+                Outcome o;
+                try {
+                    o = f.get();
+                } catch (ExecutionException e) {
+                    // verify() reports its own failures; this is a bug in the verifier itself.
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (o.passed()) passed++;
+                System.out.printf("%s  %s (%s)  %d ms%s%n",
+                    o.passed() ? "PASS" : "FAIL", o.job().trace(), o.job().config(), o.millis(),
+                    o.detail().isEmpty() ? "" : "  " + o.detail());
+            }
+
+            long elapsed = (System.nanoTime() - start) / 1_000_000;
+            System.out.printf("%d traces: %d passed, %d failed in %d ms (%d threads, %d configs)%n",
+                jobs.size(), passed, jobs.size() - passed, elapsed, threads, configs.size());
+            return passed == jobs.size();
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Outcome verify(Job job) {
+        long start = System.nanoTime();
+        Loaded loaded = configs.computeIfAbsent(job.config(), BatchVerifier::load);
+        if (loaded.model() == null) {
+            return new Outcome(job, false, elapsedMs(start), loaded.error());
+        }
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(buffer, true, StandardCharsets.UTF_8);
+        boolean passed;
+        try {
+            passed = KrpsimVerif.verifyFile(loaded.model(), job.trace(), out);
+        } catch (IOException | RuntimeException e) {
+            return new Outcome(job, false, elapsedMs(start), "ERROR: " + e.getMessage());
+        }
+        return new Outcome(job, passed, elapsedMs(start), passed ? "" : firstError(buffer.toString(StandardCharsets.UTF_8)));
+    }
+
+    private static Loaded load(Path config) {
+        try {
+            return new Loaded(ModelSnapshot.load(config.toString()), null);
+        } catch (Exception e) {
+            return new Loaded(null, "ERROR: cannot read config " + config + ": " + e.getMessage());
+        }
+    }
+
+    private static String firstError(String output) {
+        return output.lines().filter(l -> l.startsWith("ERROR")).findFirst().orElse("");
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+}
@@ -1,22 +1,39 @@
 package krpsim;
 
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardCopyOption;
 
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+import krpsim.optimizer.IncumbentListener;
 import krpsim.optimizer.OptimizationStrategy;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
 import krpsim.optimizer.GreedyOptimizer;
 import krpsim.optimizer.BeamSearchOptimizer;
 import krpsim.optimizer.BranchAndBoundOptimizer;
+import krpsim.optimizer.PortfolioOptimizer;
+import krpsim.optimizer.ResultCache;
+import krpsim.optimizer.SearchBudget;
+import krpsim.trace.BinaryTraceFormat;
+import krpsim.trace.BinaryTraceWriter;
+import krpsim.trace.TextTraceWriter;
+import krpsim.trace.TraceBuffer;
+import krpsim.trace.TracePreview;
+import krpsim.trace.TraceSink;
+import krpsim.utils.ConfigSyntaxException;
 import krpsim.utils.Parser;
 import krpsim.visualizer.SimulationVisualizer;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Set;
-import java.util.HashSet;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.function.IntFunction;
+import java.util.stream.IntStream;
 
 /**
  * Main simulation class for the Key Resource Process Simulator (krpsim).
@@ -25,18 +42,54 @@ import java.util.Map;
  * optimizing for either time or specific resource production targets.
  *
  * Usage: java -cp <classpath> krpsim.Krpsim <configFile> <maxDelay> [--optimize-level N]
- *   where N = 0 (Greedy - default), 1 (Beam Search), 2 (Branch & Bound A*)
+ *          [--beam-width W] [--threads T] [--batch-starts] [--binary-trace] [--compact-trace]
+ *          [--no-trace] [--anytime] [--target-score S] [--time-limit MS] [--node-limit N]
+ *          [--memory-limit MB] [--stats] [--no-cache] [--cache-dir DIR] [--cache-size MB]
+ *   where N = 0 (Greedy - default), 1 (Beam Search), 2 (Branch & Bound A*), 3 (Portfolio)
+ *        java -cp <classpath> krpsim.Krpsim --sweep <grid> [--parallel N] [--output FILE.csv|FILE.json]
+ *   (see {@link SweepRunner})
  */
 public class Krpsim {
 
+    // Increased beam width (vs. the optimizer default) for better exploration
+    static final int DEFAULT_BEAM_WIDTH = 16;
+    // Wall-clock limit of branch & bound and the portfolio when --time-limit is not given
+    static final long DEFAULT_SEARCH_TIME_MS = 5000;
+    // Result cache location and size when --cache-dir / --cache-size are not given
+    private static final String DEFAULT_CACHE_DIR = ".krpsim-cache";
+    private static final long DEFAULT_CACHE_SIZE_MB = 256;
+
     public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("--sweep")) {
+            System.exit(SweepRunner.run(args) ? 0 : 1);
+        }
         if (args.length < 2) {
-            System.out.println("Usage: krpsim <configFile> <maxDelay> [--optimize-level N] [--visualize]");
+            System.out.println("Usage: krpsim <configFile> <maxDelay> [--optimize-level N] [--beam-width W] [--threads T] [--batch-starts] [--binary-trace] [--compact-trace] [--no-trace] [--anytime] [--target-score S] [--time-limit MS] [--node-limit N] [--memory-limit MB] [--stats] [--no-cache] [--cache-dir DIR] [--cache-size MB] [--visualize]");
             System.out.println("  Optimization levels:");
             System.out.println("    0 = Greedy (fast, default)");
             System.out.println("    1 = Beam Search (good quality)");
             System.out.println("    2 = Branch & Bound A* (best quality, slower)");
+            System.out.println("    3 = Portfolio (all of the above raced on separate threads)");
+            System.out.println("  --beam-width: states kept per beam layer (default " + DEFAULT_BEAM_WIDTH + ")");
+            System.out.println("  --threads: worker threads for beam expansion and branch & bound (default 1)");
+            System.out.println("  --batch-starts: greedy starts as many instances of a process as the stocks allow at once (implies --compact-trace)");
+            System.out.println("  --binary-trace: write the trace in the compact binary format (.krpt)");
+            System.out.println("  --compact-trace: write batched starts as one time:process:count line");
+            System.out.println("  --no-trace: only print the preview and final stocks, without writing the trace file");
+            System.out.println("  --anytime: rewrite the trace file each time the search finds a better solution");
+            System.out.println("  --target-score: stop the search as soon as a solution reaches this score");
+            System.out.println("  --time-limit: wall-clock limit of the run in ms (default " + DEFAULT_SEARCH_TIME_MS
+                + " for levels 2 and 3, none otherwise)");
+            System.out.println("  --node-limit: stop after this many search states (decision points for greedy)");
+            System.out.println("  --memory-limit: stop once the used heap exceeds this many MB");
+            System.out.println("  --stats: print search counters (states, prunings, events, time to solutions)");
+            System.out.println("  --no-cache: always run the search, without reading or storing cached results");
+            System.out.println("  --cache-dir: directory of cached results (default " + DEFAULT_CACHE_DIR + ")");
+            System.out.println("  --cache-size: size the result cache is trimmed to, in MB (default "
+                + DEFAULT_CACHE_SIZE_MB + ")");
             System.out.println("  --visualize: Show GUI with Gantt chart and resource graphs");
+            System.out.println("       krpsim --sweep <grid> [--parallel N] [--output FILE.csv|FILE.json]");
+            System.out.println("  runs every cell of a parameter grid (configs x delays x levels ...) and writes a table");
             return;
         }
 
@@ -50,77 +103,203 @@ public class Krpsim {
 
         // Parse optimization level
         int optimizeLevel = 0; // default: greedy
+        int beamWidth = DEFAULT_BEAM_WIDTH;
+        int threads = 1;
         boolean visualize = false;
+        boolean batchStarts = false;
+        boolean binaryTrace = false;
+        boolean compactTrace = false;
+        boolean writeTrace = true;
+        boolean anytime = false;
+        boolean printStats = false;
+        boolean useCache = true;
+        String cacheDir = DEFAULT_CACHE_DIR;
+        long cacheSizeMb = DEFAULT_CACHE_SIZE_MB;
+        double targetScore = Double.NaN;
+        long timeLimitMs = -1; // not given: depends on the level
+        long nodeLimit = SearchBudget.NO_LIMIT;
+        long memoryLimitBytes = SearchBudget.NO_LIMIT;
         
         for (int i = 2; i < args.length; i++) {
             if (args[i].equals("--optimize-level") && i + 1 < args.length) {
                 try {
                     optimizeLevel = Integer.parseInt(args[i + 1]);
-                    if (optimizeLevel < 0 || optimizeLevel > 2) {
-                        System.err.println("Warning: optimize-level must be 0, 1, or 2. Using default (0).");
+                    if (optimizeLevel < 0 || optimizeLevel > 3) {
+                        System.err.println("Warning: optimize-level must be 0, 1, 2, or 3. Using default (0).");
                         optimizeLevel = 0;
                     }
                 } catch (NumberFormatException ex) {
                     System.err.println("Warning: Invalid optimize-level. Using default (0).");
                 }
                 i++; // skip next arg
+            } else if (args[i].equals("--beam-width") && i + 1 < args.length) {
+                beamWidth = parsePositive(args[++i], "beam-width", DEFAULT_BEAM_WIDTH);
+            } else if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = parsePositive(args[++i], "threads", 1);
+            } else if (args[i].equals("--batch-starts")) {
+                batchStarts = true;
+            } else if (args[i].equals("--binary-trace")) {
+                binaryTrace = true;
+            } else if (args[i].equals("--compact-trace")) {
+                compactTrace = true;
+            } else if (args[i].equals("--no-trace")) {
+                writeTrace = false;
+            } else if (args[i].equals("--anytime")) {
+                anytime = true;
+            } else if (args[i].equals("--target-score") && i + 1 < args.length) {
+                try {
+                    targetScore = Double.parseDouble(args[++i]);
+                } catch (NumberFormatException ex) {
+                    System.err.println("Warning: Invalid target-score. Searching until the limit.");
+                }
+            } else if (args[i].equals("--time-limit") && i + 1 < args.length) {
+                timeLimitMs = parsePositiveLong(args[++i], "time-limit", DEFAULT_SEARCH_TIME_MS);
+            } else if (args[i].equals("--node-limit") && i + 1 < args.length) {
+                nodeLimit = parsePositiveLong(args[++i], "node-limit", SearchBudget.NO_LIMIT);
+            } else if (args[i].equals("--memory-limit") && i + 1 < args.length) {
+                long mb = parsePositiveLong(args[++i], "memory-limit", SearchBudget.NO_LIMIT);
+                memoryLimitBytes = mb == SearchBudget.NO_LIMIT ? mb : mb * 1024 * 1024;
+            } else if (args[i].equals("--stats")) {
+                printStats = true;
+            } else if (args[i].equals("--no-cache")) {
+                useCache = false;
+            } else if (args[i].equals("--cache-dir") && i + 1 < args.length) {
+                cacheDir = args[++i];
+            } else if (args[i].equals("--cache-size") && i + 1 < args.length) {
+                cacheSizeMb = parsePositiveLong(args[++i], "cache-size", DEFAULT_CACHE_SIZE_MB);
             } else if (args[i].equals("--visualize")) {
                 visualize = true;
             }
         }
 
+        // One line per batched instance can take billions of lines, so batches keep their count
+        if (batchStarts) compactTrace = true;
+
+        // Searches that may not end on their own get a default time limit
+        if (timeLimitMs < 0 && optimizeLevel >= 2) timeLimitMs = DEFAULT_SEARCH_TIME_MS;
+        SearchBudget budget = SearchBudget.unlimited()
+            .withTimeLimit(timeLimitMs < 0 ? SearchBudget.NO_LIMIT : timeLimitMs)
+            .withNodeLimit(nodeLimit)
+            .withMemoryLimit(memoryLimitBytes);
+
         // Select optimization strategy
-        // Strategy selection: 0=Greedy (mandatory), 1=Beam Search, 2=Branch & Bound
-        OptimizationStrategy strategy = switch (optimizeLevel) {
-            case 1 -> new BeamSearchOptimizer(16); // increased beam width for better exploration
-            case 2 -> new BranchAndBoundOptimizer(5000); // 5s for speed; no fallback
-            default -> new GreedyOptimizer();
-        };
+        OptimizationStrategy strategy = createStrategy(optimizeLevel, beamWidth, threads, batchStarts, budget);
+        // Everything that changes the result of a plain run, as the result cache key
+        String strategyKey = "level=" + optimizeLevel + " beam=" + beamWidth + " threads=" + threads
+            + " batch=" + batchStarts + " time=" + budget.timeLimitMs() + " nodes=" + budget.nodeLimit()
+            + " memory=" + budget.memoryLimitBytes();
 
-        // Parse config with friendly error if the file is missing
-        Parser.Config config;
+        // Parse and compile the config with friendly error if the file is missing.
+        // Unique stocks (initial + those produced/consumed by processes) are the model's resources
+        CompiledModel model;
         try {
-            config = Parser.parse(file);
+            model = ModelSnapshot.load(file);
         } catch (FileNotFoundException e) {
             System.err.println("Error: file '" + file + "' not found. Check the path (e.g., krpsim/coffee_shop).");
             return;
+        } catch (ConfigSyntaxException e) {
+            System.err.println("Error: " + e.getMessage());
+            return;
         } catch (IOException e) {
             System.err.println("Error reading file '" + file + "': " + e.getMessage());
             return;
         }
-        var result = strategy.optimize(config, maxDelay);
-
-        // --- Save trace to file for verification ---
-        String traceDir = "traces";
-        Files.createDirectories(Paths.get(traceDir));
-        // Use config file name (without path) for trace file name
-        String configBase = file.replaceAll("^.*[\\/]", "").replaceAll("\\..*", "");
-        String traceFile = traceDir + "/" + configBase + "_trace.txt";
-        Files.write(Paths.get(traceFile), result.trace(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
-        System.err.println("Trace saved to: " + traceFile);
 
-        // Count all unique stocks (initial + those produced/consumed by processes)
-        Set<String> allStocks = new HashSet<>(config.initialStocks().keySet());
-        for (var p : config.processes()) {
-            allStocks.addAll(p.needs().keySet());
-            allStocks.addAll(p.results().keySet());
-        }
+        Parser.Config config = model.config();
 
         // Count all optimize targets exactly as provided (including time)
         int optimizeCount = config.optimizeTargets().size();
         System.err.println("Nice file! " + config.processes().size() + " processes, " +
-            allStocks.size() + " stocks, " + optimizeCount + " to optimize");
+            model.resourceCount() + " stocks, " + optimizeCount + " to optimize");
         System.err.println("Evaluating .................. done.");
         System.err.println("Main walk");
+
+        // --- Stream the trace to its file for verification ---
+        String traceDir = "traces";
+        Files.createDirectories(Paths.get(traceDir));
+        // Use config file name (without path) for trace file name
+        String configBase = file.replaceAll("^.*[\\/]", "").replaceAll("\\..*", "");
+        String traceFile = traceDir + "/" + configBase + "_trace" + (binaryTrace ? BinaryTraceFormat.EXTENSION : ".txt");
+
+        // Trace entries are (time, process id) pairs, formatted only by the sinks that print them
+        IntFunction<String> processNames = model::processName;
         // Limit trace output to avoid flooding: show first 10 lines, then summarize the rest
-        final int MAX_TRACE_LINES = 10; 
-        List<String> trace = result.trace();
-        int linesToShow = Math.min(trace.size(), MAX_TRACE_LINES);
-        for (int i = 0; i < linesToShow; i++) {
-            System.out.println(trace.get(i));
+        final int MAX_TRACE_LINES = 10;
+        TracePreview preview = new TracePreview(System.out, processNames, MAX_TRACE_LINES);
+        // The visualizer needs the whole trace; otherwise it is never held in memory
+        TraceBuffer recorded = visualize ? new TraceBuffer(processNames) : null;
+
+        Path tracePath = Paths.get(traceFile);
+        OptimizationResult result;
+        boolean cached = false;
+        if (anytime || !Double.isNaN(targetScore)) {
+            // Anytime run: every improvement is reported, and the trace is only known per solution.
+            final boolean writeIncumbents = anytime;
+            final double target = targetScore;
+            final boolean binary = binaryTrace;
+            final boolean compact = compactTrace;
+            final boolean writeIncumbentTraces = writeTrace;
+            IncumbentListener listener = incumbent -> {
+                System.err.printf("New best score %.0f after %d ms (%d states)%n",
+                    incumbent.score(), incumbent.elapsedMs(), incumbent.statesExplored());
+                if (writeIncumbents && writeIncumbentTraces) {
+                    writeTraceAtomically(tracePath, incumbent.result(), model, binary, compact);
+                }
+                return Double.isNaN(target) || incumbent.score() < target;
+            };
+            OptimizationResult best = strategy.optimize(model, maxDelay, listener);
+            try (TraceSink writer = writeTrace
+                    ? openTraceWriter(tracePath, model, binaryTrace, compactTrace) : TraceSink.discard()) {
+                TraceSink sink = recorded != null
+                    ? TraceSink.tee(writer, preview, recorded)
+                    : TraceSink.tee(writer, preview);
+                OptimizationStrategy.replay(best, model, sink);
+            }
+            result = best;
+        } else {
+            // Plain runs go through the result cache: a rerun of the same (config, delay, strategy) replays it
+            ResultCache cache = useCache
+                ? new ResultCache(Paths.get(cacheDir), cacheSizeMb * 1024 * 1024) : null;
+            ResultCache.Recorder stored = cache != null ? cache.recorder() : null;
+            try (TraceSink writer = writeTrace
+                    ? openTraceWriter(tracePath, model, binaryTrace, compactTrace) : TraceSink.discard()) {
+                List<TraceSink> sinks = new ArrayList<>(List.of(writer, preview));
+                if (recorded != null) sinks.add(recorded);
+                TraceSink sink = TraceSink.tee(sinks.toArray(new TraceSink[0]));
+                result = cache != null ? cache.get(model, maxDelay, strategyKey, sink) : null;
+                if (result != null) {
+                    cached = true;
+                } else {
+                    if (stored != null) sink = TraceSink.tee(sink, stored);
+                    result = strategy.optimize(model, maxDelay, sink);
+                }
+            }
+            if (cache != null && !cached) {
+                try {
+                    cache.put(model, maxDelay, strategyKey, result, stored);
+                } catch (IOException e) {
+                    System.err.println("Warning: could not store the result in " + cacheDir + ": " + e.getMessage());
+                }
+            }
+        }
+        if (writeTrace) {
+            System.err.println("Trace saved to: " + traceFile);
+        }
+        if (cached) {
+            System.err.println("Result loaded from cache (" + cacheDir + ")");
+        }
+        if (strategy instanceof PortfolioOptimizer portfolio && !cached) {
+            System.err.println("Best result from: " + portfolio.getWinner());
+        }
+        if (strategy instanceof BranchAndBoundOptimizer bb && !cached) {
+            System.err.printf("Explored %d states (%.0f states/s, %d threads)%n",
+                bb.getStatesExplored(), bb.getStatesPerSecond(), threads);
+        }
+        if (printStats) {
+            result.stats().print(System.err);
         }
-        if (trace.size() > MAX_TRACE_LINES) {
-            System.err.println("... truncated " + (trace.size() - MAX_TRACE_LINES) + " more entries ...");
+        if (preview.truncated() > 0) {
+            System.err.println("... truncated " + preview.truncated() + " more entries ...");
         }
 
         if (result.finished()) {
@@ -132,7 +311,8 @@ public class Krpsim {
         
         // Show visualization if requested
         if (visualize) {
-            SimulationVisualizer.show(result, config, maxDelay);
+            SimulationVisualizer.show(new OptimizationResult(recorded, result.finalStocks(),
+                result.finalTime(), result.finished(), result.score()), config, maxDelay);
         }
         System.err.println("Stock :");
         // Print stocks in alphabetical order like example
@@ -140,4 +320,76 @@ public class Krpsim {
             .sorted(Map.Entry.comparingByKey())
             .forEach(e -> System.err.println(e.getKey() + "=> " + e.getValue()));
     }
+
+    /**
+     * Creates the strategy of an optimization level:
+     * 0=Greedy (mandatory), 1=Beam Search, 2=Branch & Bound, 3=Portfolio.
+     */
+    static OptimizationStrategy createStrategy(int optimizeLevel, int beamWidth, int threads, boolean batchStarts,
+                                               SearchBudget budget) {
+        return switch (optimizeLevel) {
+            case 1 -> new BeamSearchOptimizer(beamWidth, threads, budget);
+            case 2 -> new BranchAndBoundOptimizer(budget, threads);
+            case 3 -> new PortfolioOptimizer(budget);
+            default -> new GreedyOptimizer(batchStarts, budget);
+        };
+    }
+
+    /**
+     * Opens the trace file in the requested format.
+     */
+    private static TraceSink openTraceWriter(Path path, CompiledModel model, boolean binary, boolean compact)
+            throws IOException {
+        if (binary) {
+            return new BinaryTraceWriter(path, model.fingerprint(),
+                IntStream.range(0, model.processCount()).mapToObj(model::processName).toList());
+        }
+        return new TextTraceWriter(path, model::processName, compact);
+    }
+
+    /**
+     * Replaces the trace file with the trace of a result, so a killed run
+     * still leaves the last complete trace behind.
+     */
+    private static void writeTraceAtomically(Path path, OptimizationResult result, CompiledModel model,
+                                             boolean binary, boolean compact) {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try {
+            try (TraceSink writer = openTraceWriter(tmp, model, binary, compact)) {
+                OptimizationStrategy.replay(result, model, writer);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses a strictly positive integer option, warning and falling back to a default.
+     */
+    private static int parsePositive(String value, String option, int fallback) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException ex) {
+            // fall through to the warning below
+        }
+        System.err.println("Warning: " + option + " must be a positive integer. Using default (" + fallback + ").");
+        return fallback;
+    }
+
+    /**
+     * Parses a strictly positive limit, warning and falling back to a default.
+     */
+    private static long parsePositiveLong(String value, String option, long fallback) {
+        try {
+            long n = Long.parseLong(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException ex) {
+            // fall through to the warning below
+        }
+        String shown = fallback == SearchBudget.NO_LIMIT ? "no limit" : String.valueOf(fallback);
+        System.err.println("Warning: " + option + " must be a positive integer. Using default (" + shown + ").");
+        return fallback;
+    }
 }
\ No newline at end of file
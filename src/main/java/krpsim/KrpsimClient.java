@@ -0,0 +1,147 @@
+package krpsim;
+
+import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Thin client of {@link KrpsimServer}: sends a configuration to a running
+ * server and prints the result the way krpsim does, writing the streamed
+ * trace to {@code traces/<name>_trace.txt}.
+ *
+ * Usage: java krpsim.KrpsimClient <configFile> <maxDelay> [--server URL] [--optimize-level N]
+ *          [--beam-width W] [--threads T] [--batch-starts] [--compact-trace]
+ *          [--time-limit MS] [--node-limit N] [--memory-limit MB]
+ */
+public class KrpsimClient {
+
+    private static final int MAX_TRACE_LINES = 10;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: krpsim_client <configFile> <maxDelay> [--server URL] [--optimize-level N] [--beam-width W] [--threads T] [--batch-starts] [--compact-trace] [--time-limit MS] [--node-limit N] [--memory-limit MB]");
+            System.out.println("  --server: krpsim server to run the job on (default http://localhost:" + KrpsimServer.DEFAULT_PORT + ")");
+            System.out.println("  other options are those of krpsim; the server checks their values");
+            return;
+        }
+        String file = args[0];
+        String server = "http://localhost:" + KrpsimServer.DEFAULT_PORT;
+        List<String> params = new ArrayList<>();
+        params.add("delay=" + encode(args[1]));
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("--server") && i + 1 < args.length) {
+                server = args[++i];
+            } else if (option.equals("--batch-starts") || option.equals("--compact-trace")) {
+                params.add(option.substring(2));
+            } else if (option.startsWith("--") && i + 1 < args.length) {
+                String name = option.equals("--optimize-level") ? "level" : option.substring(2);
+                params.add(encode(name) + "=" + encode(args[++i]));
+            } else {
+                System.err.println("Warning: ignoring option " + option);
+            }
+        }
+
+        byte[] text;
+        try (InputStream in = new FileInputStream(file)) {
+            text = in.readAllBytes();
+        } catch (FileNotFoundException e) {
+            System.err.println("Error: file '" + file + "' not found. Check the path (e.g., krpsim/coffee_shop).");
+            return;
+        }
+
+        HttpRequest request = HttpRequest.newBuilder(URI.create(server + "/optimize?" + String.join("&", params)))
+            .POST(HttpRequest.BodyPublishers.ofByteArray(text))
+            .build();
+        HttpResponse<InputStream> response;
+        try {
+            response = HttpClient.newHttpClient().send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (ConnectException e) {
+            System.err.println("Error: no krpsim server at " + server + " (start one with krpsim.KrpsimServer).");
+            return;
+        }
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(response.body(), StandardCharsets.UTF_8))) {
+            if (response.statusCode() != 200) {
+                String message = in.readLine();
+                System.err.println("Error: " + (message != null ? message : "server answered " + response.statusCode()));
+                return;
+            }
+            print(in, file, args[1]);
+        }
+    }
+
+    /**
+     * Prints the streamed result: header, trace preview and file, end time and stocks.
+     */
+    private static void print(BufferedReader in, String file, String maxDelay) throws IOException {
+        Files.createDirectories(Path.of("traces"));
+        String configBase = file.replaceAll("^.*[\\/]", "").replaceAll("\\..*", "");
+        String traceFile = "traces/" + configBase + "_trace.txt";
+
+        String end = null;
+        List<String> stocks = new ArrayList<>();
+        long entries = 0;
+        try (PrintWriter trace = new PrintWriter(Files.newBufferedWriter(Path.of(traceFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith("# config ")) {
+                    String[] counts = line.substring(9).split(" ");
+                    System.err.println("Nice file! " + counts[0] + " processes, " + counts[1] + " stocks, "
+                        + counts[2] + " to optimize");
+                    System.err.println("Evaluating .................. done.");
+                    System.err.println("Main walk");
+                } else if (line.startsWith("# finished ")) {
+                    end = "no more process doable at time " + line.substring(11);
+                } else if (line.startsWith("# reached ")) {
+                    end = "Reached delay " + maxDelay;
+                } else if (line.startsWith("# stock ")) {
+                    int space = line.lastIndexOf(' ');
+                    stocks.add(line.substring(8, space) + "=> " + line.substring(space + 1));
+                } else if (line.startsWith("# error ")) {
+                    System.err.println("Error: " + line.substring(8));
+                    return;
+                } else {
+                    trace.println(line);
+                    // time:process, or time:process:count for compact lines
+                    int last = line.lastIndexOf(':');
+                    int count = last > line.indexOf(':') ? Integer.parseInt(line.substring(last + 1)) : 1;
+                    String start = count > 1 ? line.substring(0, last) : line;
+                    for (long i = entries; i < Math.min(entries + count, MAX_TRACE_LINES); i++) {
+                        System.out.println(start);
+                    }
+                    entries += count;
+                }
+            }
+        }
+        if (end == null) {
+            System.err.println("Error: the server closed the connection before the end of the job.");
+            return;
+        }
+        System.err.println("Trace saved to: " + traceFile);
+        if (entries > MAX_TRACE_LINES) {
+            System.err.println("... truncated " + (entries - MAX_TRACE_LINES) + " more entries ...");
+        }
+        System.err.println(end);
+        System.err.println("Stock :");
+        stocks.forEach(System.err::println);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
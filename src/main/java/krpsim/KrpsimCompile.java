@@ -0,0 +1,40 @@
+package krpsim;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+
+/**
+ * Compiles configuration files into binary snapshots ({@code <config>.krpm}),
+ * which krpsim and krpsim_verif load instead of parsing the text while the
+ * configuration is unchanged.
+ *
+ * Usage: java krpsim.KrpsimCompile <configFile>...
+ */
+public class KrpsimCompile {
+
+    public static void main(String[] args) {
+        if (args.length == 0) {
+            System.out.println("Usage: krpsim_compile <config>...");
+            System.out.println("  writes <config>" + ModelSnapshot.EXTENSION + " next to each configuration");
+            return;
+        }
+        boolean ok = true;
+        for (String file : args) {
+            try {
+                CompiledModel model = ModelSnapshot.write(file);
+                System.err.println("Wrote snapshot: " + ModelSnapshot.snapshotPath(file) + " ("
+                    + model.processCount() + " processes, " + model.resourceCount() + " stocks)");
+            } catch (FileNotFoundException e) {
+                System.err.println("Error: file '" + file + "' not found.");
+                ok = false;
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+                ok = false;
+            }
+        }
+        if (!ok) System.exit(1);
+    }
+}
@@ -0,0 +1,367 @@
+package krpsim;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import krpsim.model.CompiledModel;
+import krpsim.optimizer.CancellationToken;
+import krpsim.optimizer.OptimizationStrategy;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.optimizer.SearchBudget;
+import krpsim.trace.TextTraceWriter;
+import krpsim.trace.TraceSink;
+import krpsim.utils.ConfigSyntaxException;
+import krpsim.utils.Parser;
+
+/**
+ * Daemon mode of krpsim: serves optimization jobs over HTTP from one warm JVM,
+ * so repeated runs pay neither JVM startup nor cold JIT.
+ *
+ * <pre>
+ *   POST /optimize?delay=D[&amp;level=N][&amp;beam-width=W][&amp;threads=T][&amp;batch-starts]
+ *                 [&amp;compact-trace][&amp;time-limit=MS][&amp;node-limit=N][&amp;memory-limit=MB]
+ * </pre>
+ *
+ * takes the configuration text as body and streams back, as the job runs:
+ *
+ * <pre>
+ *   # config &lt;processes&gt; &lt;stocks&gt; &lt;targets to optimize&gt;
+ *   time:processName                  one line per start, as in a trace file
+ *   time:processName:count            batched starts, with compact-trace or batch-starts
+ *   # finished &lt;time&gt;  or  # reached &lt;delay&gt;
+ *   # stock &lt;name&gt; &lt;quantity&gt;       one line per stock, sorted by name
+ * </pre>
+ *
+ * Invalid parameters or configurations are answered with 400, bodies larger
+ * than {@code --max-body} with 413, a job failing before its trace started
+ * with 500 and a full queue with 503; a job failing after its trace started
+ * ends the stream with {@code # error <message>}. {@code GET /health} answers "ok".
+ *
+ * Jobs run on a fixed pool of workers with a bounded queue, each with its own
+ * budget: the same defaults as krpsim, with the time limit capped by
+ * {@code --max-time-limit}. Configurations are kept by content, so jobs on an
+ * already-loaded configuration reuse its parsed and compiled model.
+ *
+ * Usage: java krpsim.KrpsimServer [--port P] [--host H] [--workers N] [--queue Q] [--max-time-limit MS]
+ *          [--max-body MB]
+ *   (see {@link KrpsimClient})
+ */
+public class KrpsimServer {
+
+    static final int DEFAULT_PORT = 8642;
+    private static final int DEFAULT_QUEUE = 64;
+    private static final long DEFAULT_MAX_TIME_MS = 60_000;
+    private static final int DEFAULT_MAX_BODY_MB = 16;
+    // Distinct configurations kept loaded, least recently used first out
+    private static final int LOADED_CONFIGS = 8;
+
+    private final ThreadPoolExecutor jobs;
+    private final long maxTimeLimitMs;
+    private final long maxBodyBytes;
+    // Cancels the running jobs when the server stops
+    private final CancellationToken shutdown = new CancellationToken();
+    private final Map<Source, CompiledModel> loaded = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Source, CompiledModel> eldest) {
+            return size() > LOADED_CONFIGS;
+        }
+    };
+
+    /**
+     * Configuration text, compared by content.
+     */
+    private record Source(byte[] bytes) {
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Source s && Arrays.equals(bytes, s.bytes);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(bytes);
+        }
+    }
+
+    KrpsimServer(int workers, int queue, long maxTimeLimitMs, long maxBodyBytes) {
+        this.jobs = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queue));
+        this.maxTimeLimitMs = maxTimeLimitMs;
+        this.maxBodyBytes = maxBodyBytes;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String host = "localhost";
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = DEFAULT_QUEUE;
+        long maxTimeLimitMs = DEFAULT_MAX_TIME_MS;
+        int maxBodyMb = DEFAULT_MAX_BODY_MB;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--port") && i + 1 < args.length) {
+                port = parsePositive(args[++i], "port", DEFAULT_PORT);
+            } else if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else if (args[i].equals("--workers") && i + 1 < args.length) {
+                workers = parsePositive(args[++i], "workers", workers);
+            } else if (args[i].equals("--queue") && i + 1 < args.length) {
+                queue = parsePositive(args[++i], "queue", DEFAULT_QUEUE);
+            } else if (args[i].equals("--max-time-limit") && i + 1 < args.length) {
+                maxTimeLimitMs = parsePositive(args[++i], "max-time-limit", (int) DEFAULT_MAX_TIME_MS);
+            } else if (args[i].equals("--max-body") && i + 1 < args.length) {
+                maxBodyMb = parsePositive(args[++i], "max-body", DEFAULT_MAX_BODY_MB);
+            } else {
+                System.out.println("Usage: krpsim_server [--port P] [--host H] [--workers N] [--queue Q] [--max-time-limit MS] [--max-body MB]");
+                System.out.println("  --port: TCP port (default " + DEFAULT_PORT + ")");
+                System.out.println("  --host: address to listen on (default localhost)");
+                System.out.println("  --workers: jobs run at once (default: number of processors)");
+                System.out.println("  --queue: jobs waiting for a worker before new ones are refused (default " + DEFAULT_QUEUE + ")");
+                System.out.println("  --max-time-limit: cap on the time limit of a job in ms (default " + DEFAULT_MAX_TIME_MS + ")");
+                System.out.println("  --max-body: largest configuration accepted, in MB (default " + DEFAULT_MAX_BODY_MB + ")");
+                return;
+            }
+        }
+
+        KrpsimServer krpsim = new KrpsimServer(workers, queue, maxTimeLimitMs, maxBodyMb * 1024L * 1024);
+        HttpServer server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/optimize", krpsim::submit);
+        server.createContext("/health", KrpsimServer::health);
+        // Exchanges are only accepted here; jobs run on the bounded pool
+        ExecutorService acceptors = Executors.newCachedThreadPool();
+        server.setExecutor(acceptors);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            krpsim.shutdown.cancel();
+            server.stop(0);
+            krpsim.jobs.shutdownNow();
+            acceptors.shutdownNow();
+        }));
+        server.start();
+        System.err.println("krpsim server listening on http://" + host + ":" + server.getAddress().getPort()
+            + " (" + workers + " workers, queue " + queue + ")");
+    }
+
+    private static void health(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "ok");
+    }
+
+    /**
+     * Queues a job, or refuses it when the queue is full.
+     */
+    private void submit(HttpExchange exchange) throws IOException {
+        if (!exchange.getRequestMethod().equals("POST")) {
+            respond(exchange, 405, "use POST with the configuration as body");
+            return;
+        }
+        try {
+            jobs.execute(() -> run(exchange));
+        } catch (RejectedExecutionException e) {
+            respond(exchange, 503, "server busy: " + jobs.getQueue().size() + " jobs queued");
+        }
+    }
+
+    /**
+     * Runs one job on a worker and streams its result.
+     */
+    private void run(HttpExchange exchange) {
+        try (exchange) {
+            Map<String, String> params = query(exchange.getRequestURI().getRawQuery());
+            int maxDelay;
+            int level;
+            int beamWidth;
+            int threads;
+            SearchBudget budget;
+            try {
+                maxDelay = intParam(params, "delay", -1);
+                if (maxDelay < 0) throw new IllegalArgumentException("delay must be given as a non-negative integer");
+                level = intParam(params, "level", 0);
+                if (level < 0 || level > 3) throw new IllegalArgumentException("level must be 0, 1, 2, or 3");
+                beamWidth = positive(intParam(params, "beam-width", Krpsim.DEFAULT_BEAM_WIDTH), "beam-width");
+                threads = positive(intParam(params, "threads", 1), "threads");
+                long defaultTime = level >= 2 ? Krpsim.DEFAULT_SEARCH_TIME_MS : maxTimeLimitMs;
+                long memoryMb = positive(longParam(params, "memory-limit", SearchBudget.NO_LIMIT), "memory-limit");
+                budget = SearchBudget.unlimited()
+                    .withTimeLimit(Math.min(positive(longParam(params, "time-limit", defaultTime), "time-limit"),
+                        maxTimeLimitMs))
+                    .withNodeLimit(positive(longParam(params, "node-limit", SearchBudget.NO_LIMIT), "node-limit"))
+                    .withMemoryLimit(memoryMb == SearchBudget.NO_LIMIT ? memoryMb : memoryMb * 1024 * 1024)
+                    .withToken(shutdown.child());
+            } catch (IllegalArgumentException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            }
+
+            byte[] text;
+            try (InputStream body = exchange.getRequestBody()) {
+                text = readBody(exchange, body);
+            }
+            if (text == null) {
+                respond(exchange, 413, "configuration larger than " + maxBodyBytes + " bytes");
+                return;
+            }
+            CompiledModel model;
+            OptimizationStrategy strategy;
+            try {
+                model = load(text);
+                strategy = Krpsim.createStrategy(level, beamWidth, threads, params.containsKey("batch-starts"), budget);
+            } catch (ConfigSyntaxException e) {
+                respond(exchange, 400, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                respond(exchange, 500, "job failed: " + e);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            write(out, "# config " + model.processCount() + " " + model.resourceCount() + " "
+                + model.config().optimizeTargets().size());
+            try {
+                OptimizationResult result;
+                // The trace writer must not end the response: the summary follows it
+                OutputStream traceOut = new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                };
+                try (TraceSink trace = new TextTraceWriter(Channels.newChannel(traceOut), model::processName,
+                        params.containsKey("compact-trace") || params.containsKey("batch-starts"))) {
+                    result = strategy.optimize(model, maxDelay, trace);
+                }
+                write(out, result.finished() ? "# finished " + result.finalTime() : "# reached " + maxDelay);
+                StringBuilder stocks = new StringBuilder();
+                result.finalStocks().entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> stocks.append("# stock ").append(e.getKey()).append(' ').append(e.getValue())
+                        .append(System.lineSeparator()));
+                out.write(stocks.toString().getBytes(StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                write(out, "# error " + e);
+            }
+        } catch (IOException e) {
+            // The client went away; nothing is left to answer.
+        }
+    }
+
+    /**
+     * Reads a request body of at most {@code maxBodyBytes}, rejecting a larger
+     * declared length before reading anything.
+     *
+     * @return body, or null if it is too large
+     */
+    private byte[] readBody(HttpExchange exchange, InputStream body) throws IOException {
+        String declared = exchange.getRequestHeaders().getFirst("Content-Length");
+        try {
+            if (declared != null && Long.parseLong(declared) > maxBodyBytes) return null;
+        } catch (NumberFormatException e) {
+            // Let the read below enforce the limit.
+        }
+        byte[] text = body.readNBytes((int) Math.min(maxBodyBytes + 1, Integer.MAX_VALUE - 8));
+        return text.length > maxBodyBytes ? null : text;
+    }
+
+    /**
+     * @return compiled configuration, shared by every job sending the same text
+     */
+    private CompiledModel load(byte[] text) throws ConfigSyntaxException {
+        Source source = new Source(text);
+        synchronized (loaded) {
+            CompiledModel model = loaded.get(source);
+            if (model != null) return model;
+        }
+        CompiledModel model = CompiledModel.compile(Parser.parse("request", text));
+        synchronized (loaded) {
+            CompiledModel raced = loaded.putIfAbsent(source, model);
+            return raced != null ? raced : model;
+        }
+    }
+
+    private static void write(OutputStream out, String line) throws IOException {
+        out.write((line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void respond(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + System.lineSeparator()).getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null) return params;
+        for (String pair : rawQuery.split("&")) {
+            if (pair.isEmpty()) continue;
+            int eq = pair.indexOf('=');
+            String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(key, value);
+        }
+        return params;
+    }
+
+    private static int intParam(Map<String, String> params, String name, int fallback) {
+        String value = params.get(name);
+        if (value == null) return fallback;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    private static long longParam(Map<String, String> params, String name, long fallback) {
+        String value = params.get(name);
+        if (value == null) return fallback;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer, got '" + value + "'");
+        }
+    }
+
+    private static <N extends Number> N positive(N value, String name) {
+        if (value.longValue() <= 0) throw new IllegalArgumentException(name + " must be a positive integer");
+        return value;
+    }
+
+    /**
+     * Parses a strictly positive integer option, warning and falling back to a default.
+     */
+    private static int parsePositive(String value, String option, int fallback) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) return n;
+        } catch (NumberFormatException ex) {
+            // fall through to the warning below
+        }
+        System.err.println("Warning: " + option + " must be a positive integer. Using default (" + fallback + ").");
+        return fallback;
+    }
+}
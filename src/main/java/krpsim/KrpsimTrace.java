@@ -0,0 +1,110 @@
+package krpsim;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+import krpsim.trace.BinaryTraceFormat;
+import krpsim.trace.BinaryTraceReader;
+import krpsim.trace.BinaryTraceWriter;
+import krpsim.trace.TextTraceWriter;
+import krpsim.trace.TraceSink;
+
+/**
+ * Converts traces between the text format ("time:processName" lines, or
+ * "time:processName:count" for batched starts) and the compact binary format.
+ * The direction follows the input: a binary trace is written out as text, a
+ * text trace as binary. A binary trace keeps its own process names, with a
+ * warning if they or its fingerprint do not match the configuration. On a bad
+ * input the partial output is deleted and the exit status is non-zero.
+ *
+ * Usage: java krpsim.KrpsimTrace <configFile> <inputTrace> <outputTrace>
+ */
+public class KrpsimTrace {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3) {
+            System.out.println("Usage: krpsim_trace <config> <input trace> <output trace>");
+            System.out.println("  binary input is written as text, text input as binary (" + BinaryTraceFormat.EXTENSION + ")");
+            return;
+        }
+        CompiledModel model = ModelSnapshot.load(args[0]);
+        Path input = Path.of(args[1]);
+        Path output = Path.of(args[2]);
+
+        boolean binary = BinaryTraceFormat.isBinary(input);
+        boolean ok = binary ? binaryToText(model, input, output) : textToBinary(model, input, output);
+        if (!ok) {
+            Files.deleteIfExists(output);
+            System.exit(1);
+        }
+        System.err.println("Wrote " + (binary ? "text" : "binary") + " trace: " + output);
+    }
+
+    /**
+     * Writes the trace with its own name table, warning when it does not
+     * match the configuration.
+     *
+     * @return false if the binary trace is corrupt
+     */
+    private static boolean binaryToText(CompiledModel model, Path input, Path output) throws IOException {
+        try (BinaryTraceReader reader = BinaryTraceReader.open(input);
+             TraceSink writer = new TextTraceWriter(output, reader.processNames()::get, true)) {
+            if (reader.fingerprint() != model.fingerprint()) {
+                System.err.println("Warning: trace was written for a different configuration");
+            }
+            for (String name : reader.processNames()) {
+                if (model.processIndex(name) < 0) {
+                    System.err.println("Warning: process " + name + " of the trace is not in the configuration");
+                }
+            }
+            reader.readAll(writer);
+        } catch (IOException e) {
+            System.err.println("Error: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return false if a line is not a valid start of the configuration
+     */
+    private static boolean textToBinary(CompiledModel model, Path input, Path output) throws IOException {
+        try (BufferedReader br = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             TraceSink writer = new BinaryTraceWriter(output, model.fingerprint(),
+                 IntStream.range(0, model.processCount()).mapToObj(model::processName).toList())) {
+            String line;
+            int lineNumber = 0;
+            while ((line = br.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) continue;
+                String[] parts = line.trim().split(":", 3);
+                int p = parts.length >= 2 ? model.processIndex(parts[1]) : -1;
+                if (p < 0) {
+                    System.err.println("Error: bad trace line " + lineNumber + ": " + line);
+                    return false;
+                }
+                int time;
+                int count;
+                try {
+                    time = Integer.parseInt(parts[0]);
+                    count = parts.length == 3 ? Integer.parseInt(parts[2]) : 1;
+                } catch (NumberFormatException ex) {
+                    System.err.println("Error: bad number on line " + lineNumber + ": " + line);
+                    return false;
+                }
+                if (count <= 0) {
+                    System.err.println("Error: bad instance count on line " + lineNumber + ": " + line);
+                    return false;
+                }
+                writer.accept(time, p, count);
+            }
+        }
+        return true;
+    }
+}
@@ -1,134 +1,221 @@
 package krpsim;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.io.BufferedReader;
-import java.io.FileReader;
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
-import krpsim.model.Process;
-import krpsim.utils.Parser;
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+import krpsim.model.Simulation;
+import krpsim.trace.BinaryTraceFormat;
+import krpsim.trace.BinaryTraceReader;
 
 /**
  * Trace verification program for krpsim.
  * 
- * Expects trace to contain lines in the format "time:processName" representing process start times.
+ * Expects trace to contain lines in the format "time:processName" representing process start times,
+ * or "time:processName:count" for count instances started together (compact traces).
  * Validates that at each start time, sufficient resources are available to begin the process.
+ * The trace is streamed: lines are checked as they are read, in-flight processes wait in the
+ * simulation's time-ordered event heap and stocks are int-indexed.
+ * Binary traces ({@code --binary-trace}) are detected by their header and read through a
+ * memory-mapped buffer. The configuration is loaded from its snapshot when one is up to date
+ * (see {@link KrpsimCompile}).
  *
  * Usage: java krpsim.KrpsimVerif <configFile> <traceFile>
+ *        java krpsim.KrpsimVerif --batch <manifest|traceDir> [--configs DIR] [--threads N]
+ *   (see {@link BatchVerifier})
  */
 public class KrpsimVerif {
 
     public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("--batch")) {
+            System.exit(BatchVerifier.run(args) ? 0 : 1);
+        }
         if (args.length != 2) {
             System.out.println("Usage: krpsim_verif <config> <trace>");
+            System.out.println("       krpsim_verif --batch <manifest|trace dir> [--configs DIR] [--threads N]");
             return;
         }
-        var config = Parser.parse(args[0]);
-        List<String> trace = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader(args[1]))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (!line.isBlank()) trace.add(line.trim());
-            }
+        verifyFile(ModelSnapshot.load(args[0]), Path.of(args[1]), System.out);
+    }
+
+    /**
+     * Verifies one trace file, text or binary, against a compiled configuration.
+     *
+     * @param out receives the verdict and final stocks
+     * @return true if the trace is correct
+     */
+    static boolean verifyFile(CompiledModel model, Path tracePath, PrintStream out) throws IOException {
+        if (BinaryTraceFormat.isBinary(tracePath)) {
+            return verifyBinary(model, tracePath, out);
+        }
+        try (BufferedReader br = Files.newBufferedReader(tracePath, StandardCharsets.UTF_8)) {
+            return verify(model, br, out);
         }
-        verify(config, trace);
     }
 
-    private static void verify(Parser.Config config, List<String> trace) {
-        Map<String,Integer> stocks = new LinkedHashMap<>(config.initialStocks());
-        Map<String, Process> procMap = new HashMap<>();
-        for (Process p : config.processes()) procMap.put(p.name(), p);
-
-        // pending: key -> completion time
-        Map<String,Integer> pending = new HashMap<>();
-        int currentTime = 0;
-        int lastCompletionTime = -1;
-
-        for (String line : trace) {
-            String[] parts = line.split(":", 2);
-            if (parts.length != 2) {
-                System.out.println("ERROR: Bad trace line: " + line);
-                printFinal(stocks, currentTime);
-                return;
+    /**
+     * Checks the trace line by line as it is read; memory stays bounded by
+     * the processes in flight, whatever the trace length.
+     */
+    private static boolean verify(CompiledModel model, BufferedReader trace, PrintStream out) throws IOException {
+        Verifier verifier = new Verifier(model, out);
+
+        String line;
+        while ((line = trace.readLine()) != null) {
+            if (line.isBlank()) continue;
+            line = line.trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                verifier.fail("ERROR: Bad trace line: " + line);
+                return false;
             }
+            String timeText = line.substring(0, colon);
             int time;
-            try { time = Integer.parseInt(parts[0]); }
+            try { time = Integer.parseInt(timeText); }
             catch (NumberFormatException ex) {
-                System.out.println("ERROR: Bad time in trace: " + parts[0]);
-                printFinal(stocks, currentTime);
-                return;
+                verifier.fail("ERROR: Bad time in trace: " + timeText);
+                return false;
+            }
+            String procName = line.substring(colon + 1);
+            int count = 1;
+            int countColon = procName.indexOf(':');
+            if (countColon >= 0) {
+                String countText = procName.substring(countColon + 1);
+                procName = procName.substring(0, countColon);
+                try { count = Integer.parseInt(countText); }
+                catch (NumberFormatException ex) { count = 0; }
+                if (count <= 0) {
+                    verifier.fail("ERROR: Bad instance count in trace: " + countText);
+                    return false;
+                }
             }
-            String procName = parts[1];
+            if (!verifier.start(time, model.processIndex(procName), procName, count)) return false;
+        }
 
-            // Apply completions up to time (inclusive of those finishing <= time)
-            while (!pending.isEmpty() && pending.values().stream().min(Integer::compareTo).orElse(Integer.MAX_VALUE) <= time) {
-                int tmin = pending.values().stream().min(Integer::compareTo).orElse(Integer.MAX_VALUE);
-                // advance to tmin
-                applyCompleted(stocks, pending, tmin, procMap);
-                lastCompletionTime = Math.max(lastCompletionTime, tmin);
-                currentTime = tmin;
+        verifier.succeed();
+        return true;
+    }
+
+    private static boolean verifyBinary(CompiledModel model, Path tracePath, PrintStream out) throws IOException {
+        try (BinaryTraceReader reader = BinaryTraceReader.open(tracePath)) {
+            if (reader.fingerprint() != model.fingerprint()) {
+                out.println("WARNING: Trace was written for a different configuration; matching processes by name");
             }
+            // Trace process ids index the writer's name table; map them to this model.
+            List<String> names = reader.processNames();
+            int[] ids = new int[names.size()];
+            for (int i = 0; i < ids.length; i++) ids[i] = model.processIndex(names.get(i));
+
+            Verifier verifier = new Verifier(model, out);
+            while (reader.next()) {
+                int p = reader.process();
+                if (!verifier.start(reader.time(), ids[p], names.get(p), reader.count())) return false;
+            }
+            verifier.succeed();
+            return true;
+        }
+    }
+
+    /**
+     * Replays process starts against the configuration and reports the outcome.
+     */
+    private static final class Verifier {
+        final CompiledModel model;
+        final PrintStream out;
+        final Simulation sim;
+        final boolean[] started;
+        // Earliest completion time per process, to know which results were applied on error.
+        final int[] firstCompletion;
+        int appliedUntil = -1;
+
+        Verifier(CompiledModel model, PrintStream out) {
+            this.model = model;
+            this.out = out;
+            this.sim = new Simulation(model);
+            this.started = new boolean[model.processCount()];
+            this.firstCompletion = new int[model.processCount()];
+            Arrays.fill(firstCompletion, Integer.MAX_VALUE);
+        }
+
+        /**
+         * Checks and applies one start of {@code count} instances.
+         *
+         * @param p process id, or -1 if the name is unknown
+         * @return false if the start is invalid (the error has been reported)
+         */
+        boolean start(int time, int p, String procName, int count) {
+            // Apply completions up to time (inclusive of those finishing <= time)
+            sim.completeUntil(time);
+            appliedUntil = Math.max(appliedUntil, time);
             // advance currentTime to trace time
-            currentTime = Math.max(currentTime, time);
+            sim.advanceTo(Math.max(sim.currentTime(), time));
 
-            Process p = procMap.get(procName);
-            if (p == null) {
-                System.out.println("ERROR: Unknown process " + procName + " at cycle " + time);
-                printFinal(stocks, currentTime);
-                return;
+            if (p < 0) {
+                fail("ERROR: Unknown process " + procName + " at cycle " + time);
+                return false;
             }
 
             // Check if sufficient resources are available to start the process
-            for (var need : p.needs().entrySet()) {
-                int avail = stocks.getOrDefault(need.getKey(), 0);
-                if (avail < need.getValue()) {
-                    System.out.println("ERROR: Not enough " + need.getKey() + " at cycle " + time + " for " + procName);
-                    printFinal(stocks, currentTime);
-                    return;
+            int[] needIds = model.needIds(p);
+            int[] needQty = model.needQuantities(p);
+            for (int i = 0; i < needIds.length; i++) {
+                if (sim.stock(needIds[i]) < (long) count * needQty[i]) {
+                    fail("ERROR: Not enough " + model.resourceName(needIds[i]) + " at cycle " + time + " for " + procName);
+                    return false;
+                }
+            }
+
+            // Results that would push a stock past the int range are not representable
+            int[] resultIds = model.resultIds(p);
+            int[] resultQty = model.resultQuantities(p);
+            for (int i = 0; i < resultIds.length; i++) {
+                long gain = (long) count * (resultQty[i] - model.needQuantity(p, resultIds[i]));
+                if (gain > sim.headroom(resultIds[i])) {
+                    fail("ERROR: " + model.resourceName(resultIds[i]) + " would exceed " + Integer.MAX_VALUE + " at cycle " + time + " for " + procName);
+                    return false;
                 }
             }
 
             // Consume resources and schedule for completion
-            p.needs().forEach((k,v) -> stocks.merge(k, -v, Integer::sum));
-            pending.put(procName + "@" + time, time + p.delay());
+            sim.start(p, time, count);
+            started[p] = true;
+            firstCompletion[p] = Math.min(firstCompletion[p], time + model.delay(p));
+            return true;
         }
 
-        // After all trace lines, finish remaining pending processes
-        while (!pending.isEmpty()) {
-            int tmin = pending.values().stream().min(Integer::compareTo).orElse(Integer.MAX_VALUE);
-            applyCompleted(stocks, pending, tmin, procMap);
-            lastCompletionTime = Math.max(lastCompletionTime, tmin);
-            currentTime = tmin;
+        void fail(String message) {
+            out.println(message);
+            printFinal(out, model, sim, started, completedBy(firstCompletion, appliedUntil), sim.currentTime());
         }
 
-        System.out.println("Trace is correct!");
-        printFinal(stocks, (lastCompletionTime >= 0) ? (lastCompletionTime + 1) : currentTime);
-    }
+        void succeed() {
+            // After all trace lines, finish remaining pending processes
+            sim.completeAll();
 
-    private static void applyCompleted(Map<String,Integer> stocks, Map<String,Integer> pending, int time, Map<String,Process> procMap) {
-        // Find all processes completing at <= time and apply their results
-        List<String> toRemove = new ArrayList<>();
-        for (var e : pending.entrySet()) {
-            if (e.getValue() <= time) {
-                String procKey = e.getKey();
-                String procName = procKey.split("@")[0];
-                Process p = procMap.get(procName);
-                if (p != null) {
-                    p.results().forEach((k,v) -> stocks.merge(k, v, Integer::sum));
-                }
-                toRemove.add(procKey);
-            }
+            out.println("Trace is correct!");
+            int lastCompletionTime = sim.lastCompletionTime();
+            printFinal(out, model, sim, started, started, (lastCompletionTime >= 0) ? (lastCompletionTime + 1) : sim.currentTime());
         }
-        toRemove.forEach(pending::remove);
     }
 
-    private static void printFinal(Map<String,Integer> stocks, int time) {
-        System.out.println("Final stocks at cycle " + time + ":");
-        stocks.entrySet().stream()
+    private static boolean[] completedBy(int[] firstCompletion, int time) {
+        boolean[] completed = new boolean[firstCompletion.length];
+        for (int p = 0; p < firstCompletion.length; p++) completed[p] = firstCompletion[p] <= time;
+        return completed;
+    }
+
+    private static void printFinal(PrintStream out, CompiledModel model, Simulation sim, boolean[] started, boolean[] completed, int time) {
+        out.println("Final stocks at cycle " + time + ":");
+        model.toStockMap(sim.stocks(), started, completed).entrySet().stream()
             .sorted(Map.Entry.comparingByKey())
-            .forEach(e -> System.out.println(e.getKey() + " => " + e.getValue()));
+            .forEach(e -> out.println(e.getKey() + " => " + e.getValue()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,393 @@
+package krpsim;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.ModelSnapshot;
+import krpsim.optimizer.OptimizationStrategy;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.optimizer.SearchBudget;
+import krpsim.trace.TraceSink;
+
+/**
+ * Sweep mode of {@link Krpsim}: runs every cell of a parameter grid in one JVM
+ * and writes a table of the results.
+ *
+ * The grid is a file of {@code key: values} lines ('#' starts a comment),
+ * values separated by spaces or commas:
+ *
+ * <pre>
+ *   configs: krpsim/simple krpsim/ikea   config files, or directories of them
+ *   delays: 100 1000 100000
+ *   levels: 0 1 2                        (default 0)
+ *   beam-width: 16 64                    (default 16)
+ *   threads: 1 4                         (default 1)
+ *   batch-starts: false true             (default false)
+ *   time-limit: 2000                     ms (default: krpsim's, per level)
+ *   node-limit: 1000000                  single value (default none)
+ *   memory-limit: 512                    MB, single value (default none)
+ * </pre>
+ *
+ * Cells are the cartesian product of the lists, in that order, and run
+ * concurrently on a fixed thread pool. Each config is compiled once and shared
+ * by all of its cells; traces are only counted, never written. The table has
+ * one row per cell, in grid order: CSV, or JSON when the output file name
+ * ends in {@code .json}.
+ */
+final class SweepRunner {
+
+    private record Cell(Path config, int delay, int level, int beamWidth, int threads, boolean batchStarts,
+                        long timeLimitMs) {}
+
+    private record Row(Cell cell, double score, int finalTime, boolean finished, long starts,
+                       long statesExpanded, long statesGenerated, long wallMs, String error) {}
+
+    /** A compiled config, or the reason it could not be loaded. */
+    private record Loaded(CompiledModel model, String error) {}
+
+    private static final String[] COLUMNS = {"config", "delay", "level", "beam_width", "threads", "batch_starts",
+        "time_limit_ms", "score", "final_time", "finished", "starts", "states_expanded", "states_generated",
+        "wall_ms", "error"};
+
+    private final Map<Path, Loaded> configs = new ConcurrentHashMap<>();
+    private final long nodeLimit;
+    private final long memoryLimitBytes;
+
+    private SweepRunner(long nodeLimit, long memoryLimitBytes) {
+        this.nodeLimit = nodeLimit;
+        this.memoryLimitBytes = memoryLimitBytes;
+    }
+
+    /**
+     * @param args {@code --sweep <grid> [--parallel N] [--output FILE]}
+     * @return true if every cell ran
+     */
+    static boolean run(String[] args) throws IOException, InterruptedException {
+        Path gridFile = Path.of(args[1]);
+        Path output = null;
+        int parallel = Runtime.getRuntime().availableProcessors();
+        for (int i = 2; i < args.length; i++) {
+            if (args[i].equals("--output") && i + 1 < args.length) {
+                output = Path.of(args[++i]);
+            } else if (args[i].equals("--parallel") && i + 1 < args.length) {
+                try {
+                    parallel = Math.max(1, Integer.parseInt(args[++i]));
+                } catch (NumberFormatException ex) {
+                    System.err.println("Warning: parallel must be a positive integer. Using default (" + parallel + ").");
+                }
+            }
+        }
+
+        Map<String, List<String>> grid = readGrid(gridFile);
+        List<Cell> cells = cells(grid, gridFile);
+        if (cells.isEmpty()) {
+            System.err.println("No cells in " + gridFile + ": give at least configs and delays");
+            return false;
+        }
+        long nodeLimit = single(grid, "node-limit", SearchBudget.NO_LIMIT, gridFile);
+        long memoryMb = single(grid, "memory-limit", SearchBudget.NO_LIMIT, gridFile);
+        SweepRunner runner = new SweepRunner(nodeLimit,
+            memoryMb == SearchBudget.NO_LIMIT ? memoryMb : memoryMb * 1024 * 1024);
+
+        long start = System.nanoTime();
+        List<Row> rows = runner.runAll(cells, parallel);
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+
+        boolean json = output != null && output.getFileName().toString().endsWith(".json");
+        if (output == null) {
+            writeCsv(rows, System.out);
+        } else {
+            try (PrintStream out = new PrintStream(Files.newOutputStream(output), false, StandardCharsets.UTF_8)) {
+                if (json) writeJson(rows, out); else writeCsv(rows, out);
+            }
+        }
+        long failed = rows.stream().filter(r -> !r.error().isEmpty()).count();
+        System.err.printf("%d cells: %d ran, %d failed in %d ms (%d parallel, %d configs)%s%n",
+            rows.size(), rows.size() - failed, failed, elapsed, parallel, runner.configs.size(),
+            output == null ? "" : ", table written to " + output);
+        return failed == 0;
+    }
+
+    private static Map<String, List<String>> readGrid(Path gridFile) throws IOException {
+        Map<String, List<String>> grid = new LinkedHashMap<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(gridFile, StandardCharsets.UTF_8)) {
+            lineNumber++;
+            int hash = line.indexOf('#');
+            String content = (hash >= 0 ? line.substring(0, hash) : line).trim();
+            if (content.isEmpty()) continue;
+            int colon = content.indexOf(':');
+            if (colon <= 0) {
+                throw new IOException(gridFile + ":" + lineNumber + ": expected \"<key>: <values>\"");
+            }
+            String key = content.substring(0, colon).trim();
+            List<String> values = List.of(content.substring(colon + 1).trim().split("[\\s,]+"));
+            grid.computeIfAbsent(key, k -> new ArrayList<>()).addAll(values);
+        }
+        return grid;
+    }
+
+    private static List<Cell> cells(Map<String, List<String>> grid, Path gridFile) throws IOException {
+        List<Path> configFiles = new ArrayList<>();
+        for (String name : grid.getOrDefault("configs", List.of())) {
+            Path path = Path.of(name);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> files = Files.list(path)) {
+                    // Snapshots and hidden files are not configurations
+                    files.filter(Files::isRegularFile)
+                        .filter(f -> !f.getFileName().toString().startsWith(".")
+                            && !f.getFileName().toString().endsWith(ModelSnapshot.EXTENSION))
+                        .sorted()
+                        .forEach(configFiles::add);
+                }
+            } else {
+                configFiles.add(path);
+            }
+        }
+        List<Long> delays = longs(grid, "delays", null, gridFile);
+        List<Long> levels = longs(grid, "levels", 0L, gridFile);
+        List<Long> beamWidths = longs(grid, "beam-width", (long) Krpsim.DEFAULT_BEAM_WIDTH, gridFile);
+        List<Long> threads = longs(grid, "threads", 1L, gridFile);
+        List<Long> timeLimits = longs(grid, "time-limit", -1L, gridFile);
+        List<Boolean> batchStarts = new ArrayList<>();
+        for (String v : grid.getOrDefault("batch-starts", List.of("false"))) {
+            if (!v.equals("true") && !v.equals("false")) {
+                throw new IOException(gridFile + ": batch-starts must be true or false, got '" + v + "'");
+            }
+            batchStarts.add(Boolean.parseBoolean(v));
+        }
+        for (long level : levels) {
+            if (level < 0 || level > 3) throw new IOException(gridFile + ": levels must be 0, 1, 2, or 3");
+        }
+
+        List<Cell> cells = new ArrayList<>();
+        for (Path config : configFiles) {
+            for (long delay : delays) {
+                for (long level : levels) {
+                    for (long beamWidth : beamWidths) {
+                        for (long threadCount : threads) {
+                            for (boolean batch : batchStarts) {
+                                for (long timeLimit : timeLimits) {
+                                    // Searches that may not end on their own get krpsim's default time limit
+                                    long limit = timeLimit > 0 ? timeLimit
+                                        : level >= 2 ? Krpsim.DEFAULT_SEARCH_TIME_MS : SearchBudget.NO_LIMIT;
+                                    cells.add(new Cell(config, (int) delay, (int) level, (int) beamWidth,
+                                        (int) threadCount, batch, limit));
+                                }
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * @return the non-negative integer values of a key, or the default alone when absent
+     */
+    private static List<Long> longs(Map<String, List<String>> grid, String key, Long fallback, Path gridFile)
+            throws IOException {
+        List<String> values = grid.get(key);
+        if (values == null) return fallback == null ? List.of() : List.of(fallback);
+        List<Long> numbers = new ArrayList<>();
+        for (String v : values) {
+            try {
+                long n = Long.parseLong(v);
+                if (n < 0 || n > Integer.MAX_VALUE && !key.equals("time-limit")) throw new NumberFormatException();
+                numbers.add(n);
+            } catch (NumberFormatException ex) {
+                throw new IOException(gridFile + ": " + key + " must be non-negative integers, got '" + v + "'");
+            }
+        }
+        return numbers;
+    }
+
+    private static long single(Map<String, List<String>> grid, String key, long fallback, Path gridFile)
+            throws IOException {
+        List<String> values = grid.get(key);
+        if (values == null) return fallback;
+        if (values.size() != 1) throw new IOException(gridFile + ": " + key + " takes a single value");
+        try {
+            long n = Long.parseLong(values.get(0));
+            if (n > 0) return n;
+        } catch (NumberFormatException ex) {
+            // reported below
+        }
+        throw new IOException(gridFile + ": " + key + " must be a positive integer");
+    }
+
+    private List<Row> runAll(List<Cell> cells, int parallel) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(parallel, cells.size()));
+        List<Future<Row>> futures = new ArrayList<>();
+        try {
+            for (Cell cell : cells) {
+                futures.add(pool.submit(() -> run(cell)));
+            }
+            List<Row> rows = new ArrayList<>();
+            for (Future<Row> f : futures) {
+                try {
+                    rows.add(f.get());
+                } catch (ExecutionException e) {
+                    // run() reports its own failures; this is a bug in the sweep itself.
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+            return rows;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Row run(Cell cell) {
+        Loaded loaded = configs.computeIfAbsent(cell.config(), SweepRunner::load);
+        if (loaded.model() == null) {
+            return new Row(cell, 0, 0, false, 0, 0, 0, 0, loaded.error());
+        }
+        SearchBudget budget = SearchBudget.unlimited()
+            .withTimeLimit(cell.timeLimitMs())
+            .withNodeLimit(nodeLimit)
+            .withMemoryLimit(memoryLimitBytes);
+        OptimizationStrategy strategy = Krpsim.createStrategy(cell.level(), cell.beamWidth(), cell.threads(),
+            cell.batchStarts(), budget);
+        StartCounter starts = new StartCounter();
+        long start = System.nanoTime();
+        OptimizationResult result;
+        try {
+            result = strategy.optimize(loaded.model(), cell.delay(), starts);
+        } catch (RuntimeException | OutOfMemoryError e) {
+            // The cell's search state is garbage once it unwinds, so the other cells can go on
+            return new Row(cell, 0, 0, false, 0, 0, 0, elapsedMs(start), "ERROR: " + e);
+        }
+        return new Row(cell, result.score(), result.finalTime(), result.finished(), starts.count,
+            result.stats().statesExpanded(), result.stats().statesGenerated(), elapsedMs(start), "");
+    }
+
+    private static Loaded load(Path config) {
+        try {
+            return new Loaded(ModelSnapshot.load(config.toString()), null);
+        } catch (Exception e) {
+            return new Loaded(null, "ERROR: cannot read config " + config + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeCsv(List<Row> rows, PrintStream out) {
+        out.println(String.join(",", COLUMNS));
+        for (Row row : rows) {
+            List<String> fields = fields(row);
+            for (int i = 0; i < fields.size(); i++) {
+                if (i > 0) out.print(',');
+                out.print(csv(fields.get(i)));
+            }
+            out.println();
+        }
+    }
+
+    private static void writeJson(List<Row> rows, PrintStream out) {
+        out.println("[");
+        for (int r = 0; r < rows.size(); r++) {
+            Row row = rows.get(r);
+            List<String> fields = fields(row);
+            StringBuilder sb = new StringBuilder("  {");
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append('"').append(COLUMNS[i]).append("\": ");
+                // config and error are strings; the rest are numbers and booleans
+                boolean text = i == 0 || i == COLUMNS.length - 1;
+                String value = fields.get(i);
+                if (text) {
+                    sb.append(jsonString(value));
+                } else if (value.isEmpty() || value.equals("NaN") || value.contains("Infinity")) {
+                    sb.append("null");
+                } else {
+                    sb.append(value);
+                }
+            }
+            sb.append(r + 1 < rows.size() ? "}," : "}");
+            out.println(sb);
+        }
+        out.println("]");
+    }
+
+    /**
+     * @return the row's values in {@link #COLUMNS} order
+     */
+    private static List<String> fields(Row row) {
+        Cell c = row.cell();
+        boolean ran = row.error().isEmpty();
+        return List.of(c.config().toString(), String.valueOf(c.delay()), String.valueOf(c.level()),
+            String.valueOf(c.beamWidth()), String.valueOf(c.threads()), String.valueOf(c.batchStarts()),
+            c.timeLimitMs() == SearchBudget.NO_LIMIT ? "" : String.valueOf(c.timeLimitMs()),
+            ran ? String.valueOf(row.score()) : "", ran ? String.valueOf(row.finalTime()) : "",
+            ran ? String.valueOf(row.finished()) : "", ran ? String.valueOf(row.starts()) : "",
+            ran ? String.valueOf(row.statesExpanded()) : "", ran ? String.valueOf(row.statesGenerated()) : "",
+            String.valueOf(row.wallMs()), row.error());
+    }
+
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    private static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder("\"");
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"' -> sb.append("\\\"");
+                case '\\' -> sb.append("\\\\");
+                case '\n' -> sb.append("\\n");
+                case '\r' -> sb.append("\\r");
+                case '\t' -> sb.append("\\t");
+                default -> {
+                    if (ch < 0x20) sb.append(String.format("\\u%04x", (int) ch)); else sb.append(ch);
+                }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
+
+    /**
+     * Counts process starts without keeping them; repeated blocks are counted, not expanded.
+     */
+    private static final class StartCounter implements TraceSink {
+
+        private long count;
+
+        @Override
+        public void accept(int time, int process) {
+            count++;
+        }
+
+        @Override
+        public void accept(int time, int process, int count) {
+            this.count += count;
+        }
+
+        @Override
+        public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period,
+                                   long repetitions) {
+            long perRepetition = 0;
+            for (int i = 0; i < length; i++) perRepetition += counts[i];
+            count += perRepetition * repetitions;
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package krpsim.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import krpsim.utils.Parser;
+
+/**
+ * CompiledModel is an integer-indexed view of a parsed configuration.
+ *
+ * Resource names are interned to dense ids (0..resourceCount-1) and every
+ * process keeps its needs and results as parallel id/quantity arrays, so the
+ * simulation hot paths work on a plain {@code int[]} stock vector instead of
+ * {@code Map<String,Integer>} lookups.
+ *
+ * The model is immutable and built once per configuration with {@link #compile},
+ * then passed to the strategies and trace writers of a run. It can also be
+ * restored from a {@link ModelSnapshot} without recomputing the indexes; its
+ * configuration is then rebuilt lazily.
+ * Process ids follow the order of {@link Parser.Config#processes()}.
+ */
+public final class CompiledModel {
+
+    private final Parser.Config config;
+    private final List<Process> processes;
+    private final String[] processNames;
+    private final Map<String, Integer> processIds;
+
+    private final String[] resourceNames;
+    private final Map<String, Integer> resourceIds;
+
+    private final int[][] needIds;
+    private final int[][] needQty;
+    private final int[][] resultIds;
+    private final int[][] resultQty;
+    private final int[] delays;
+
+    // Reverse index: resource -> processes needing it, sorted by needed quantity.
+    private final int[][] consumerIds;
+    private final int[][] consumerQty;
+    // Reverse index: resource -> processes producing it, in process order.
+    private final int[][] producerIds;
+
+    private final int[] initialStocks;
+    private final boolean[] initiallyPresent;
+
+    private final Set<String> optimizeTargets;
+    private final boolean[] target;
+    private final boolean optimizeTime;
+    private final boolean[] relevant;
+    private final long fingerprint;
+
+    private CompiledModel(Parser.Config config) {
+        this.config = config;
+        this.processes = config.processes();
+        this.optimizeTargets = config.optimizeTargets();
+
+        // Intern resources in first-seen order: initial stocks, then process needs/results.
+        resourceIds = new HashMap<>();
+        List<String> names = new ArrayList<>();
+        for (String r : config.initialStocks().keySet()) intern(r, names);
+        for (Process p : processes) {
+            for (String r : p.needs().keySet()) intern(r, names);
+            for (String r : p.results().keySet()) intern(r, names);
+        }
+        resourceNames = names.toArray(new String[0]);
+
+        int resourceCount = resourceNames.length;
+        initialStocks = new int[resourceCount];
+        initiallyPresent = new boolean[resourceCount];
+        config.initialStocks().forEach((k, v) -> {
+            int id = resourceIds.get(k);
+            initialStocks[id] = v;
+            initiallyPresent[id] = true;
+        });
+
+        int processCount = processes.size();
+        processNames = new String[processCount];
+        processIds = new HashMap<>();
+        needIds = new int[processCount][];
+        needQty = new int[processCount][];
+        resultIds = new int[processCount][];
+        resultQty = new int[processCount][];
+        delays = new int[processCount];
+        for (int i = 0; i < processCount; i++) {
+            Process p = processes.get(i);
+            processNames[i] = p.name();
+            // Keep the first occurrence so lookups by name match list order semantics.
+            processIds.putIfAbsent(p.name(), i);
+            needIds[i] = ids(p.needs());
+            needQty[i] = quantities(p.needs());
+            resultIds[i] = ids(p.results());
+            resultQty[i] = quantities(p.results());
+            delays[i] = p.delay();
+        }
+
+        consumerIds = new int[resourceCount][];
+        consumerQty = new int[resourceCount][];
+        buildConsumerIndex();
+        producerIds = buildProducerIndex();
+
+        target = new boolean[resourceCount];
+        for (int r = 0; r < resourceCount; r++) {
+            target[r] = optimizeTargets.contains(resourceNames[r]);
+        }
+        optimizeTime = optimizeTargets.contains("time");
+        relevant = buildRelevantProcesses();
+        fingerprint = computeFingerprint();
+    }
+
+    /**
+     * Compiles a parsed configuration into its integer-indexed form.
+     *
+     * @param config parsed configuration
+     * @return compiled model
+     */
+    public static CompiledModel compile(Parser.Config config) {
+        return new CompiledModel(config);
+    }
+
+    /**
+     * @return configuration this model was compiled from (or restored with)
+     */
+    public Parser.Config config() {
+        return config;
+    }
+
+    // --- Snapshots ----------------------------------------------------------
+
+    /**
+     * Writes the model in the snapshot body layout described by {@link ModelSnapshot}.
+     * Initial stocks and targets keep the iteration order of the configuration.
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(resourceNames.length);
+        for (String name : resourceNames) writeString(out, name);
+        out.writeInt(config.initialStocks().size());
+        for (Map.Entry<String, Integer> e : config.initialStocks().entrySet()) {
+            out.writeInt(resourceIds.get(e.getKey()));
+            out.writeInt(e.getValue());
+        }
+        out.writeInt(optimizeTargets.size());
+        for (String t : optimizeTargets) writeString(out, t);
+        out.writeInt(processNames.length);
+        for (int p = 0; p < processNames.length; p++) {
+            writeString(out, processNames[p]);
+            out.writeInt(delays[p]);
+            writePairs(out, needIds[p], needQty[p]);
+            writePairs(out, resultIds[p], resultQty[p]);
+        }
+        for (int r = 0; r < resourceNames.length; r++) {
+            writePairs(out, consumerIds[r], consumerQty[r]);
+        }
+        for (int[] ids : producerIds) {
+            out.writeInt(ids.length);
+            for (int p : ids) out.writeInt(p);
+        }
+        for (boolean flag : relevant) out.writeBoolean(flag);
+        out.writeLong(fingerprint);
+    }
+
+    /**
+     * Restores a model written by {@link #writeTo}.
+     */
+    static CompiledModel restore(ByteBuffer in) {
+        return new CompiledModel(in);
+    }
+
+    private CompiledModel(ByteBuffer in) {
+        resourceNames = new String[in.getInt()];
+        resourceIds = new HashMap<>();
+        for (int r = 0; r < resourceNames.length; r++) {
+            resourceNames[r] = readString(in);
+            resourceIds.put(resourceNames[r], r);
+        }
+        int resourceCount = resourceNames.length;
+
+        // Maps are refilled in their original iteration order, so they iterate the same way.
+        Map<String, Integer> stocks = new HashMap<>();
+        initialStocks = new int[resourceCount];
+        initiallyPresent = new boolean[resourceCount];
+        for (int i = in.getInt(); i > 0; i--) {
+            int id = in.getInt();
+            initialStocks[id] = in.getInt();
+            initiallyPresent[id] = true;
+            stocks.put(resourceNames[id], initialStocks[id]);
+        }
+        Set<String> targets = new HashSet<>();
+        for (int i = in.getInt(); i > 0; i--) targets.add(readString(in));
+        optimizeTargets = targets;
+
+        int processCount = in.getInt();
+        processNames = new String[processCount];
+        processIds = new HashMap<>();
+        needIds = new int[processCount][];
+        needQty = new int[processCount][];
+        resultIds = new int[processCount][];
+        resultQty = new int[processCount][];
+        delays = new int[processCount];
+        for (int p = 0; p < processCount; p++) {
+            processNames[p] = readString(in);
+            processIds.putIfAbsent(processNames[p], p);
+            delays[p] = in.getInt();
+            needIds[p] = new int[in.getInt()];
+            needQty[p] = readPairs(in, needIds[p]);
+            resultIds[p] = new int[in.getInt()];
+            resultQty[p] = readPairs(in, resultIds[p]);
+        }
+        consumerIds = new int[resourceCount][];
+        consumerQty = new int[resourceCount][];
+        for (int r = 0; r < resourceCount; r++) {
+            consumerIds[r] = new int[in.getInt()];
+            consumerQty[r] = readPairs(in, consumerIds[r]);
+        }
+        producerIds = new int[resourceCount][];
+        for (int r = 0; r < resourceCount; r++) {
+            producerIds[r] = new int[in.getInt()];
+            for (int i = 0; i < producerIds[r].length; i++) producerIds[r][i] = in.getInt();
+        }
+        relevant = new boolean[processCount];
+        for (int p = 0; p < processCount; p++) relevant[p] = in.get() != 0;
+        fingerprint = in.getLong();
+
+        target = new boolean[resourceCount];
+        for (int r = 0; r < resourceCount; r++) {
+            target[r] = optimizeTargets.contains(resourceNames[r]);
+        }
+        optimizeTime = optimizeTargets.contains("time");
+        processes = new ProcessView();
+        config = new Parser.Config(stocks, processes, optimizeTargets);
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writePairs(DataOutputStream out, int[] ids, int[] qty) throws IOException {
+        out.writeInt(ids.length);
+        for (int i = 0; i < ids.length; i++) {
+            out.writeInt(ids[i]);
+            out.writeInt(qty[i]);
+        }
+    }
+
+    /**
+     * Reads ids.length (id, quantity) pairs into ids.
+     *
+     * @return the quantities
+     */
+    private static int[] readPairs(ByteBuffer in, int[] ids) {
+        int[] qty = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = in.getInt();
+            qty[i] = in.getInt();
+        }
+        return qty;
+    }
+
+    /**
+     * Processes of a restored model, built from the packed arrays on first access.
+     */
+    private final class ProcessView extends AbstractList<Process> implements RandomAccess {
+
+        private final Process[] built = new Process[processNames.length];
+
+        @Override
+        public Process get(int index) {
+            Process p = built[index];
+            if (p == null) {
+                p = new Process(processNames[index], toMap(needIds[index], needQty[index]),
+                    toMap(resultIds[index], resultQty[index]), delays[index]);
+                built[index] = p;
+            }
+            return p;
+        }
+
+        @Override
+        public int size() {
+            return processNames.length;
+        }
+
+        private Map<String, Integer> toMap(int[] ids, int[] qty) {
+            Map<String, Integer> map = new HashMap<>();
+            for (int i = 0; i < ids.length; i++) map.put(resourceNames[ids[i]], qty[i]);
+            return map;
+        }
+    }
+
+    private void intern(String name, List<String> names) {
+        if (!resourceIds.containsKey(name)) {
+            resourceIds.put(name, names.size());
+            names.add(name);
+        }
+    }
+
+    private int[] ids(Map<String, Integer> map) {
+        int[] out = new int[map.size()];
+        int i = 0;
+        for (String k : map.keySet()) out[i++] = resourceIds.get(k);
+        return out;
+    }
+
+    private static int[] quantities(Map<String, Integer> map) {
+        int[] out = new int[map.size()];
+        int i = 0;
+        for (int v : map.values()) out[i++] = v;
+        return out;
+    }
+
+    /**
+     * Builds the resource -> consumers reverse index. Consumers of each resource
+     * are sorted by needed quantity so that a stock change only visits the
+     * consumers whose threshold it crosses.
+     */
+    private void buildConsumerIndex() {
+        int[] counts = new int[resourceNames.length];
+        for (int[] ids : needIds) {
+            for (int r : ids) counts[r]++;
+        }
+        long[][] packed = new long[resourceNames.length][];
+        for (int r = 0; r < packed.length; r++) packed[r] = new long[counts[r]];
+        int[] fill = new int[resourceNames.length];
+        for (int p = 0; p < needIds.length; p++) {
+            for (int i = 0; i < needIds[p].length; i++) {
+                int r = needIds[p][i];
+                // Quantity in the high bits, process id in the low bits: sorting orders by quantity.
+                packed[r][fill[r]++] = ((long) needQty[p][i] << 32) | p;
+            }
+        }
+        for (int r = 0; r < packed.length; r++) {
+            Arrays.sort(packed[r]);
+            consumerIds[r] = new int[packed[r].length];
+            consumerQty[r] = new int[packed[r].length];
+            for (int i = 0; i < packed[r].length; i++) {
+                consumerIds[r][i] = (int) packed[r][i];
+                consumerQty[r][i] = (int) (packed[r][i] >>> 32);
+            }
+        }
+    }
+
+    /**
+     * Builds the resource -> producers reverse index.
+     */
+    private int[][] buildProducerIndex() {
+        int[] counts = new int[resourceNames.length];
+        for (int[] ids : resultIds) {
+            for (int r : ids) counts[r]++;
+        }
+        int[][] out = new int[resourceNames.length][];
+        for (int r = 0; r < out.length; r++) out[r] = new int[counts[r]];
+        int[] fill = new int[resourceNames.length];
+        for (int p = 0; p < resultIds.length; p++) {
+            for (int r : resultIds[p]) out[r][fill[r]++] = p;
+        }
+        return out;
+    }
+
+    /**
+     * Backward dependency analysis from the optimization targets: a process is
+     * relevant if it directly or indirectly produces a target resource.
+     * When "time" is the only target, every process is relevant. Needed
+     * resources are walked once each through the producer index.
+     */
+    private boolean[] buildRelevantProcesses() {
+        int processCount = processNames.length;
+        boolean[] out = new boolean[processCount];
+        if (optimizeTime && optimizeTargets.size() == 1) {
+            Arrays.fill(out, true);
+            return out;
+        }
+
+        boolean[] needed = new boolean[resourceNames.length];
+        int[] queue = new int[resourceNames.length];
+        int tail = 0;
+        for (int r = 0; r < resourceNames.length; r++) {
+            if (target[r] && !resourceNames[r].equals("time")) {
+                needed[r] = true;
+                queue[tail++] = r;
+            }
+        }
+
+        for (int head = 0; head < tail; head++) {
+            for (int p : producerIds[queue[head]]) {
+                if (out[p]) continue;
+                out[p] = true;
+                for (int r : needIds[p]) {
+                    if (!needed[r]) {
+                        needed[r] = true;
+                        queue[tail++] = r;
+                    }
+                }
+            }
+        }
+        return out;
+    }
+
+    // --- Simulation primitives ---------------------------------------------
+
+    /**
+     * @return fresh copy of the initial stock vector
+     */
+    public int[] initialStocks() {
+        return initialStocks.clone();
+    }
+
+    /**
+     * Counts, for every process, how many of its needs the stocks do not satisfy.
+     *
+     * @param stocks stock vector
+     * @return per-process number of missing needs (0 means runnable)
+     */
+    public int[] missingNeeds(int[] stocks) {
+        int[] missing = new int[processNames.length];
+        for (int p = 0; p < processNames.length; p++) {
+            int[] ids = needIds[p];
+            int[] qty = needQty[p];
+            for (int i = 0; i < ids.length; i++) {
+                if (stocks[ids[i]] < qty[i]) missing[p]++;
+            }
+        }
+        return missing;
+    }
+
+    /**
+     * Checks if all required inputs for a process are available.
+     */
+    public boolean isRunnable(int[] stocks, int process) {
+        int[] ids = needIds[process];
+        int[] qty = needQty[process];
+        for (int i = 0; i < ids.length; i++) {
+            if (stocks[ids[i]] < qty[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return true if at least one process can start with the given stocks
+     */
+    public boolean anyRunnable(int[] stocks) {
+        for (int p = 0; p < processNames.length; p++) {
+            if (isRunnable(stocks, p)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Subtracts process inputs from stocks when the process starts.
+     */
+    public void consume(int[] stocks, int process) {
+        int[] ids = needIds[process];
+        int[] qty = needQty[process];
+        for (int i = 0; i < ids.length; i++) stocks[ids[i]] -= qty[i];
+    }
+
+    /**
+     * Adds process outputs to stocks when the process completes.
+     */
+    public void apply(int[] stocks, int process) {
+        int[] ids = resultIds[process];
+        int[] qty = resultQty[process];
+        for (int i = 0; i < ids.length; i++) stocks[ids[i]] += qty[i];
+    }
+
+    /**
+     * Converts a stock vector back to a name-keyed map.
+     *
+     * Only resources that were present initially or touched by a started
+     * process are included, matching the keys a map-based simulation would hold.
+     *
+     * @param stocks stock vector
+     * @param started per-process flag, true if the process was started at least once
+     * @return map of resource name -> quantity
+     */
+    public Map<String, Integer> toStockMap(int[] stocks, boolean[] started) {
+        return toStockMap(stocks, started, started);
+    }
+
+    /**
+     * Converts a stock vector back to a name-keyed map for a schedule that may
+     * still have processes in flight.
+     *
+     * @param stocks stock vector
+     * @param started per-process flag, true if the process was started at least once
+     * @param completed per-process flag, true if the process completed at least once
+     * @return map of resource name -> quantity
+     */
+    public Map<String, Integer> toStockMap(int[] stocks, boolean[] started, boolean[] completed) {
+        boolean[] present = initiallyPresent.clone();
+        for (int p = 0; p < started.length; p++) {
+            if (started[p]) {
+                for (int r : needIds[p]) present[r] = true;
+            }
+            if (completed[p]) {
+                for (int r : resultIds[p]) present[r] = true;
+            }
+        }
+        Map<String, Integer> map = new LinkedHashMap<>();
+        for (int r = 0; r < resourceNames.length; r++) {
+            if (present[r]) map.put(resourceNames[r], stocks[r]);
+        }
+        return map;
+    }
+
+    // --- Accessors ----------------------------------------------------------
+
+    public int processCount() {
+        return processNames.length;
+    }
+
+    public int resourceCount() {
+        return resourceNames.length;
+    }
+
+    public Process process(int process) {
+        return processes.get(process);
+    }
+
+    public String processName(int process) {
+        return processNames[process];
+    }
+
+    /**
+     * @return process id for the given name, or -1 if unknown
+     */
+    public int processIndex(String name) {
+        return processIds.getOrDefault(name, -1);
+    }
+
+    public String resourceName(int resource) {
+        return resourceNames[resource];
+    }
+
+    /**
+     * @return resource id for the given name, or -1 if unknown
+     */
+    public int resourceIndex(String name) {
+        return resourceIds.getOrDefault(name, -1);
+    }
+
+    public int delay(int process) {
+        return delays[process];
+    }
+
+    public int[] needIds(int process) {
+        return needIds[process];
+    }
+
+    public int[] needQuantities(int process) {
+        return needQty[process];
+    }
+
+    public int[] resultIds(int process) {
+        return resultIds[process];
+    }
+
+    public int[] resultQuantities(int process) {
+        return resultQty[process];
+    }
+
+    /**
+     * @return quantity of the resource one instance of the process needs, 0 if none
+     */
+    public int needQuantity(int process, int resource) {
+        int[] ids = needIds[process];
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] == resource) return needQty[process][i];
+        }
+        return 0;
+    }
+
+    /**
+     * @return ids of processes needing the resource, sorted by needed quantity
+     */
+    public int[] consumerIds(int resource) {
+        return consumerIds[resource];
+    }
+
+    /**
+     * @return quantities needed by {@link #consumerIds(int)}, in ascending order
+     */
+    public int[] consumerQuantities(int resource) {
+        return consumerQty[resource];
+    }
+
+    /**
+     * @return ids of processes producing the resource, in process order
+     */
+    public int[] producerIds(int resource) {
+        return producerIds[resource];
+    }
+
+    /**
+     * @return largest quantity of the resource any process needs, 0 if none needs it
+     */
+    public int maxNeed(int resource) {
+        int[] qty = consumerQty[resource];
+        return qty.length == 0 ? 0 : qty[qty.length - 1];
+    }
+
+    /**
+     * @return true if the resource is one of the optimization targets
+     */
+    public boolean isTarget(int resource) {
+        return target[resource];
+    }
+
+    /**
+     * @return true if "time" is one of the optimization targets
+     */
+    public boolean optimizesTime() {
+        return optimizeTime;
+    }
+
+    public Set<String> optimizeTargets() {
+        return optimizeTargets;
+    }
+
+    /**
+     * @return true if the process contributes (directly or indirectly) to a target
+     */
+    public boolean isRelevant(int process) {
+        return relevant[process];
+    }
+
+    /**
+     * @return 64-bit hash of the configuration content (stocks, processes in order, targets)
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Hashes names rather than ids, and sums unordered parts (stocks, needs,
+     * results, targets), so the value does not depend on map iteration order.
+     */
+    private long computeFingerprint() {
+        long h = mix(processNames.length);
+        for (int r = 0; r < resourceNames.length; r++) {
+            if (initiallyPresent[r]) h += mix(hash(resourceNames[r]) ^ mix(initialStocks[r]));
+        }
+        for (int p = 0; p < processNames.length; p++) {
+            long ph = mix(hash(processNames[p]) + delays[p]);
+            for (int i = 0; i < needIds[p].length; i++) {
+                ph += mix(hash(resourceNames[needIds[p][i]]) ^ needQty[p][i]);
+            }
+            for (int i = 0; i < resultIds[p].length; i++) {
+                ph += mix(~hash(resourceNames[resultIds[p][i]]) ^ resultQty[p][i]);
+            }
+            h = mix(h ^ ph) + p;
+        }
+        for (String t : optimizeTargets) h += mix(hash(t) * 31);
+        return mix(h);
+    }
+
+    // FNV-1a over the UTF-16 code units.
+    private static long hash(String s) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // SplitMix64 finalizer.
+    static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * @return total quantity of target resources produced by one completion
+     */
+    public int targetYield(int process) {
+        int yield = 0;
+        int[] ids = resultIds[process];
+        int[] qty = resultQty[process];
+        for (int i = 0; i < ids.length; i++) {
+            if (target[ids[i]]) yield += qty[i];
+        }
+        return yield;
+    }
+}
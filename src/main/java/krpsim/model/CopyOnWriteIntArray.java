@@ -0,0 +1,87 @@
+package krpsim.model;
+
+/**
+ * Fixed-size int array whose copies share storage until written.
+ *
+ * Values are kept in chunks of {@value #CHUNK} ints. {@link #copy()} only clones
+ * the chunk table; a chunk is duplicated the first time either side writes to it,
+ * so a branch that touches a few entries pays for a few chunks, not the whole array.
+ */
+final class CopyOnWriteIntArray {
+
+    private static final int SHIFT = 5;
+    private static final int CHUNK = 1 << SHIFT;
+    private static final int MASK = CHUNK - 1;
+
+    private final int length;
+    private final int[][] chunks;
+    // Chunks are writable in place only while tagged with this array's current token.
+    private final Object[] owners;
+    private Object token;
+
+    CopyOnWriteIntArray(int[] values) {
+        this.length = values.length;
+        this.chunks = new int[(length + MASK) >>> SHIFT][];
+        this.owners = new Object[chunks.length];
+        this.token = new Object();
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c << SHIFT;
+            chunks[c] = new int[CHUNK];
+            System.arraycopy(values, from, chunks[c], 0, Math.min(CHUNK, length - from));
+            owners[c] = token;
+        }
+    }
+
+    private CopyOnWriteIntArray(CopyOnWriteIntArray other) {
+        this.length = other.length;
+        this.chunks = other.chunks.clone();
+        this.owners = new Object[chunks.length];
+        this.token = new Object();
+        // The source gives up ownership too, so neither side writes shared chunks.
+        other.token = new Object();
+    }
+
+    /**
+     * @return copy sharing all chunks with this array
+     */
+    CopyOnWriteIntArray copy() {
+        return new CopyOnWriteIntArray(this);
+    }
+
+    int length() {
+        return length;
+    }
+
+    int get(int index) {
+        return chunks[index >>> SHIFT][index & MASK];
+    }
+
+    /**
+     * Adds a delta to one entry.
+     *
+     * @return the new value
+     */
+    int add(int index, int delta) {
+        return writable(index >>> SHIFT)[index & MASK] += delta;
+    }
+
+    private int[] writable(int c) {
+        if (owners[c] != token) {
+            chunks[c] = chunks[c].clone();
+            owners[c] = token;
+        }
+        return chunks[c];
+    }
+
+    /**
+     * @return plain array with the current values
+     */
+    int[] toArray() {
+        int[] out = new int[length];
+        for (int c = 0; c < chunks.length; c++) {
+            int from = c << SHIFT;
+            System.arraycopy(chunks[c], 0, out, from, Math.min(CHUNK, length - from));
+        }
+        return out;
+    }
+}
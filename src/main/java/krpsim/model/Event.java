@@ -2,17 +2,26 @@ package krpsim.model;
 
 /**
  * Event class represents a single event in the simulation.
- * Each event has a timestamp (time) and the name of the associated process (processName).
- * 
+ * Each event has a timestamp (time), the id of the associated process (process),
+ * as assigned by {@link CompiledModel}, and the number of instances of that
+ * process it completes (count), so a batched start needs a single event.
+ *
  * This class implements Comparable<Event> so that events can be sorted by time.
  * Useful for PriorityQueue to always get the earliest event first.
  */
-public record Event(int time, String processName) 
+public record Event(int time, int process, int count)
     implements Comparable<Event> {
 
+    /**
+     * Creates the completion event of a single process instance.
+     */
+    public Event(int time, int process) {
+        this(time, process, 1);
+    }
+
     /**
      * Compare this event with another event based on time.
-     * 
+     *
      * @param o the other Event to compare with
      * @return negative if this event occurs before the other,
      *         zero if they occur at the same time,
@@ -22,10 +31,6 @@ public record Event(int time, String processName)
     public int compareTo(Event other) {
         int c = Integer.compare(this.time, other.time);
         if (c != 0) return c;
-        return this.processName.compareTo(other.processName);
+        return Integer.compare(this.process, other.process);
     }
-    // public int compareTo(Event o) {
-    //     // Integer.compare handles the comparison safely and returns -1, 0, or 1
-    //     return Integer.compare(this.time, o.time);
-    // }
 }
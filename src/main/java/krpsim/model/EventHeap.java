@@ -0,0 +1,87 @@
+package krpsim.model;
+
+/**
+ * Persistent (immutable) leftist min-heap of completion events.
+ *
+ * Insertions and removals return a new root and share every untouched subtree
+ * with the previous version, so copying a heap is just copying its root.
+ * The empty heap is {@code null}.
+ */
+final class EventHeap {
+
+    final Event event;
+    final EventHeap left;
+    final EventHeap right;
+    // Length of the right spine; keeps merges O(log n).
+    final int rank;
+    final int size;
+
+    private EventHeap(Event event, EventHeap left, EventHeap right) {
+        // Leftist property: the left child has the longer right spine.
+        if (rank(left) < rank(right)) {
+            EventHeap tmp = left;
+            left = right;
+            right = tmp;
+        }
+        this.event = event;
+        this.left = left;
+        this.right = right;
+        this.rank = rank(right) + 1;
+        this.size = size(left) + size(right) + 1;
+    }
+
+    static int rank(EventHeap heap) {
+        return heap == null ? 0 : heap.rank;
+    }
+
+    static int size(EventHeap heap) {
+        return heap == null ? 0 : heap.size;
+    }
+
+    /**
+     * Lists every node of a heap in breadth-first order. Only the right spine
+     * of a leftist heap is short; a left chain can hold every event, so the
+     * walk uses the returned array as its queue instead of recursing.
+     *
+     * @return nodes of the heap, {@link #size} of them
+     */
+    static EventHeap[] nodes(EventHeap heap) {
+        EventHeap[] nodes = new EventHeap[size(heap)];
+        if (heap == null) return nodes;
+        nodes[0] = heap;
+        for (int head = 0, tail = 1; head < tail; head++) {
+            EventHeap h = nodes[head];
+            if (h.left != null) nodes[tail++] = h.left;
+            if (h.right != null) nodes[tail++] = h.right;
+        }
+        return nodes;
+    }
+
+    /**
+     * @return heap containing the events of both heaps
+     */
+    static EventHeap merge(EventHeap a, EventHeap b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (b.event.compareTo(a.event) < 0) {
+            EventHeap tmp = a;
+            a = b;
+            b = tmp;
+        }
+        return new EventHeap(a.event, a.left, merge(a.right, b));
+    }
+
+    /**
+     * @return heap with the event added
+     */
+    static EventHeap insert(EventHeap heap, Event event) {
+        return merge(heap, new EventHeap(event, null, null));
+    }
+
+    /**
+     * @return heap without its earliest event
+     */
+    static EventHeap pop(EventHeap heap) {
+        return merge(heap.left, heap.right);
+    }
+}
@@ -0,0 +1,144 @@
+package krpsim.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+
+import krpsim.utils.Parser;
+
+/**
+ * Binary snapshots of compiled configurations, stored next to the
+ * configuration file as {@code <config>.krpm}.
+ *
+ * A snapshot holds everything {@link CompiledModel} computes from the text:
+ * interned resource names, packed needs and results, the consumer and
+ * producer indexes, relevant processes and the fingerprint. Loading one maps the file and reads
+ * the arrays back, skipping parsing, interning and the relevance fixpoint.
+ *
+ * <pre>
+ *   header : "KRPM" | version (int) | charset name | source hash (long)
+ *   body   : resource names | initial stocks (id, qty) | targets
+ *            | processes (name, delay, needs, results) | consumer index
+ *            | producer index | relevant flags | fingerprint (long)
+ * </pre>
+ *
+ * Numbers are big-endian, strings an int length and UTF-8 bytes, and lists an
+ * int count followed by their entries. The source hash covers the bytes of the
+ * configuration text; a snapshot whose version, charset or hash does not match,
+ * or that cannot be read, is ignored and the text is parsed instead.
+ */
+public final class ModelSnapshot {
+
+    /** File name suffix of snapshots. */
+    public static final String EXTENSION = ".krpm";
+
+    private static final byte[] MAGIC = {'K', 'R', 'P', 'M'};
+    private static final int VERSION = 2;
+
+    private ModelSnapshot() {}
+
+    /**
+     * @return snapshot path for a configuration file
+     */
+    public static Path snapshotPath(String configFile) {
+        return Path.of(configFile + EXTENSION);
+    }
+
+    /**
+     * Parses a configuration file, compiles it and writes its snapshot.
+     *
+     * @param configFile path to the configuration file
+     * @return compiled model
+     * @throws java.io.FileNotFoundException if the file does not exist
+     * @throws krpsim.utils.ConfigSyntaxException if a number cannot be read
+     * @throws IOException if reading or writing fails
+     */
+    public static CompiledModel write(String configFile) throws IOException {
+        byte[] source;
+        try (FileInputStream in = new FileInputStream(configFile)) {
+            source = in.readAllBytes();
+        }
+        CompiledModel model = CompiledModel.compile(Parser.parse(configFile, source));
+        Path path = snapshotPath(configFile);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (OutputStream file = Files.newOutputStream(tmp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(Charset.defaultCharset().name());
+            out.writeLong(sourceHash(ByteBuffer.wrap(source)));
+            model.writeTo(out);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return model;
+    }
+
+    /**
+     * Loads a compiled configuration, from its snapshot when one matches the
+     * file's current content, otherwise by parsing and compiling the text.
+     *
+     * @param configFile path to the configuration file
+     * @return compiled model
+     * @throws java.io.FileNotFoundException if the file does not exist
+     * @throws krpsim.utils.ConfigSyntaxException if a number cannot be read
+     * @throws IOException if reading fails
+     */
+    public static CompiledModel load(String configFile) throws IOException {
+        try (FileInputStream in = new FileInputStream(configFile);
+             FileChannel channel = in.getChannel()) {
+            MappedByteBuffer text = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Path path = snapshotPath(configFile);
+            if (Files.isRegularFile(path)) {
+                CompiledModel model = restore(path, sourceHash(text.duplicate()));
+                if (model != null) return model;
+            }
+            byte[] source = new byte[text.remaining()];
+            text.get(source);
+            return CompiledModel.compile(Parser.parse(configFile, source));
+        }
+    }
+
+    /**
+     * @return restored model, or null if the snapshot is stale or unreadable
+     */
+    private static CompiledModel restore(Path path, long sourceHash) {
+        try (FileChannel channel = FileChannel.open(path)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.getInt() != VERSION) return null;
+            byte[] charset = new byte[in.getShort() & 0xffff];
+            in.get(charset);
+            if (!Charset.defaultCharset().name().equals(new String(charset, StandardCharsets.UTF_8))) return null;
+            if (in.getLong() != sourceHash) return null;
+            CompiledModel model = CompiledModel.restore(in);
+            return in.hasRemaining() ? null : model;
+        } catch (IOException | BufferUnderflowException | IndexOutOfBoundsException
+                 | NegativeArraySizeException e) {
+            // A truncated or corrupt snapshot only costs a parse.
+            return null;
+        }
+    }
+
+    /**
+     * 64-bit hash of the remaining bytes of a buffer, eight at a time.
+     */
+    private static long sourceHash(ByteBuffer buf) {
+        long h = CompiledModel.mix(buf.remaining());
+        while (buf.remaining() >= Long.BYTES) h = CompiledModel.mix(h ^ buf.getLong());
+        while (buf.hasRemaining()) h = CompiledModel.mix(h ^ buf.get());
+        return h;
+    }
+}
@@ -0,0 +1,466 @@
+package krpsim.model;
+
+import java.util.Arrays;
+
+/**
+ * Simulation is the event-driven core shared by every optimizer and the verifier.
+ *
+ * It holds the stock vector, the pending completion events and the current time
+ * for one schedule. Starting a process consumes its needs immediately and queues
+ * a completion {@link Event}; completing an event applies the process results.
+ * Events carry the process id, so each completion is resolved in O(1), and an
+ * instance count, so k parallel starts of one process share a single event.
+ *
+ * The set of runnable processes is maintained incrementally: every process keeps
+ * a counter of needs its inputs do not satisfy, and a stock change only revisits
+ * the consumers (from the model's reverse index) whose threshold it crosses.
+ *
+ * Search strategies branch by taking a {@link #copy()} of the simulation. Stocks
+ * and counters are copy-on-write and active events live in a persistent heap,
+ * so a copy shares its storage with the original and only pays for what it changes.
+ *
+ * A {@link Zobrist} hash of the stocks and pending events is updated on every
+ * stock change, start and completion, so {@link #stateHash()} is O(1).
+ *
+ * Stocks are plain ints. Batched starts multiply instance counts by
+ * quantities, so every stock change is checked and throws an
+ * {@link ArithmeticException} rather than wrap around; callers keep their
+ * starts within {@link #fittingInstances(int)}.
+ */
+public final class Simulation {
+
+    private final CompiledModel model;
+    private final CopyOnWriteIntArray stocks;
+    // Results of the active events per resource, applied on completion.
+    private final CopyOnWriteIntArray pending;
+    private EventHeap active;
+    private final CopyOnWriteIntArray missing;
+    private final long[] runnable;
+    private long targetTotal;
+    private long otherTotal;
+    private int currentTime;
+    private int lastCompletionTime;
+    private long hash;
+    // Hash of the stocks clipped at the largest quantity any process needs.
+    private long clippedHash;
+    // Sums over active instances, for a clock-relative signature of the event layout.
+    private int activeInstances;
+    private long activeEndSum;
+    private long activeProcessKey;
+
+    /**
+     * Creates a simulation at time 0 with the model's initial stocks.
+     *
+     * @param model compiled configuration
+     */
+    public Simulation(CompiledModel model) {
+        this.model = model;
+        int[] initial = model.initialStocks();
+        this.stocks = new CopyOnWriteIntArray(initial);
+        this.pending = new CopyOnWriteIntArray(new int[initial.length]);
+        this.active = null;
+        int[] missingNeeds = model.missingNeeds(initial);
+        this.missing = new CopyOnWriteIntArray(missingNeeds);
+        this.runnable = new long[(model.processCount() + 63) >>> 6];
+        for (int p = 0; p < missingNeeds.length; p++) {
+            if (missingNeeds[p] == 0) runnable[p >>> 6] |= 1L << p;
+        }
+        for (int r = 0; r < initial.length; r++) {
+            if (model.isTarget(r)) targetTotal += initial[r];
+            else otherTotal += initial[r];
+            hash += Zobrist.stock(r, initial[r]);
+            clippedHash += Zobrist.stock(r, Math.min(initial[r], model.maxNeed(r)));
+        }
+        this.currentTime = 0;
+        this.lastCompletionTime = -1;
+    }
+
+    private Simulation(Simulation other) {
+        this.model = other.model;
+        this.stocks = other.stocks.copy();
+        this.pending = other.pending.copy();
+        this.active = other.active;
+        this.missing = other.missing.copy();
+        this.runnable = other.runnable.clone();
+        this.targetTotal = other.targetTotal;
+        this.otherTotal = other.otherTotal;
+        this.currentTime = other.currentTime;
+        this.lastCompletionTime = other.lastCompletionTime;
+        this.hash = other.hash;
+        this.clippedHash = other.clippedHash;
+        this.activeInstances = other.activeInstances;
+        this.activeEndSum = other.activeEndSum;
+        this.activeProcessKey = other.activeProcessKey;
+    }
+
+    /**
+     * @return independent copy of this simulation for branching
+     */
+    public Simulation copy() {
+        return new Simulation(this);
+    }
+
+    /**
+     * Applies every completion event scheduled at or before the given time.
+     *
+     * @param time inclusive upper bound for completion times
+     * @return number of completion events applied
+     */
+    public int completeUntil(int time) {
+        int applied = 0;
+        while (active != null && active.event.time() <= time) {
+            Event ev = active.event;
+            active = EventHeap.pop(active);
+            int n = ev.count();
+            hash -= n * Zobrist.event(ev.time(), ev.process());
+            activeInstances -= n;
+            activeEndSum -= (long) n * ev.time();
+            activeProcessKey -= n * Zobrist.process(ev.process());
+            int[] ids = model.resultIds(ev.process());
+            int[] qty = model.resultQuantities(ev.process());
+            for (int i = 0; i < ids.length; i++) {
+                int produced = Math.multiplyExact(n, qty[i]);
+                pending.add(ids[i], -produced);
+                adjust(ids[i], produced);
+            }
+            lastCompletionTime = Math.max(lastCompletionTime, ev.time());
+            applied++;
+        }
+        return applied;
+    }
+
+    /**
+     * Applies every remaining completion event regardless of its time.
+     *
+     * @return number of completion events applied
+     */
+    public int completeAll() {
+        return completeUntil(Integer.MAX_VALUE);
+    }
+
+    /**
+     * @return true if the process has all required inputs available now
+     */
+    public boolean canStart(int process) {
+        return missing.get(process) == 0;
+    }
+
+    /**
+     * @return true if at least one process can start now
+     */
+    public boolean hasRunnable() {
+        for (long word : runnable) {
+            if (word != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Iterates the runnable set in process id order.
+     *
+     * @param from first process id to consider
+     * @return smallest runnable process id not below {@code from}, or -1 if none
+     */
+    public int nextRunnable(int from) {
+        int w = from >>> 6;
+        if (w >= runnable.length) return -1;
+        long word = runnable[w] & (-1L << from);
+        while (true) {
+            if (word != 0) return (w << 6) + Long.numberOfTrailingZeros(word);
+            if (++w == runnable.length) return -1;
+            word = runnable[w];
+        }
+    }
+
+    /**
+     * Starts a process at the current time.
+     */
+    public void start(int process) {
+        start(process, currentTime);
+    }
+
+    /**
+     * Starts a process at the given time: consumes its needs now and
+     * schedules its completion after the process delay.
+     */
+    public void start(int process, int startTime) {
+        start(process, startTime, 1);
+    }
+
+    /**
+     * Starts {@code count} parallel instances of a process at the given time,
+     * completed together by one aggregated event.
+     *
+     * @throws ArithmeticException if a needed quantity or the pending results
+     *         of a resource leave the int range; the simulation is unchanged
+     */
+    public void start(int process, int startTime, int count) {
+        int[] ids = model.needIds(process);
+        int[] qty = model.needQuantities(process);
+        int[] resultIds = model.resultIds(process);
+        int[] resultQty = model.resultQuantities(process);
+        for (int q : qty) Math.multiplyExact(count, q);
+        for (int i = 0; i < resultIds.length; i++) {
+            Math.addExact(pending.get(resultIds[i]), Math.multiplyExact(count, resultQty[i]));
+        }
+        for (int i = 0; i < ids.length; i++) adjust(ids[i], -count * qty[i]);
+        for (int i = 0; i < resultIds.length; i++) pending.add(resultIds[i], count * resultQty[i]);
+        int end = startTime + model.delay(process);
+        active = EventHeap.insert(active, new Event(end, process, count));
+        hash += count * Zobrist.event(end, process);
+        activeInstances += count;
+        activeEndSum += (long) count * end;
+        activeProcessKey += count * Zobrist.process(process);
+    }
+
+    /**
+     * @return how many instances of the process the current stocks can start
+     *         at once; 1 for a process that needs nothing
+     */
+    public int maxInstances(int process) {
+        int[] ids = model.needIds(process);
+        int[] qty = model.needQuantities(process);
+        if (ids.length == 0) return 1;
+        int max = Integer.MAX_VALUE;
+        for (int i = 0; i < ids.length; i++) max = Math.min(max, stocks.get(ids[i]) / qty[i]);
+        return max;
+    }
+
+    /**
+     * Bounds batched starts so that no stock can wrap around: a stock only
+     * grows through completions, so it never exceeds its current value plus
+     * the pending results of the active events.
+     *
+     * @return how many instances of the process can start now without any
+     *         stock exceeding {@link Integer#MAX_VALUE} once every active
+     *         process has completed; {@link Long#MAX_VALUE} if none grows
+     */
+    public long fittingInstances(int process) {
+        int[] ids = model.resultIds(process);
+        int[] qty = model.resultQuantities(process);
+        long max = Long.MAX_VALUE;
+        for (int i = 0; i < ids.length; i++) {
+            int gain = qty[i] - model.needQuantity(process, ids[i]);
+            if (gain > 0) max = Math.min(max, headroom(ids[i]) / gain);
+        }
+        return max;
+    }
+
+    /**
+     * @return how much the resource can still grow, over its current stock and
+     *         the pending results of the active events, before it exceeds
+     *         {@link Integer#MAX_VALUE}; negative if it already would
+     */
+    public long headroom(int resource) {
+        return (long) Integer.MAX_VALUE - stocks.get(resource) - pending.get(resource);
+    }
+
+    /**
+     * Changes one stock and updates the missing-needs counters of the consumers
+     * whose needed quantity lies between the old and the new level.
+     */
+    private void adjust(int resource, int delta) {
+        if (delta == 0) return;
+        int before = stocks.get(resource);
+        int after = Math.addExact(before, delta);
+        stocks.add(resource, delta);
+        if (model.isTarget(resource)) targetTotal += delta;
+        else otherTotal += delta;
+        hash += Zobrist.stock(resource, after) - Zobrist.stock(resource, before);
+
+        int[] ids = model.consumerIds(resource);
+        int[] qty = model.consumerQuantities(resource);
+        int cap = model.maxNeed(resource);
+        if (Math.min(before, cap) != Math.min(after, cap)) {
+            clippedHash += Zobrist.stock(resource, Math.min(after, cap)) - Zobrist.stock(resource, Math.min(before, cap));
+        }
+        int low = Math.min(before, after);
+        int high = Math.max(before, after);
+        // Consumers needing q with low < q <= high flip between satisfied and missing.
+        for (int i = firstAbove(qty, low); i < qty.length && qty[i] <= high; i++) {
+            int p = ids[i];
+            if (delta > 0) {
+                if (missing.add(p, -1) == 0) runnable[p >>> 6] |= 1L << p;
+            } else {
+                if (missing.add(p, 1) == 1) runnable[p >>> 6] &= ~(1L << p);
+            }
+        }
+    }
+
+    /**
+     * @return index of the first element strictly greater than the value
+     */
+    private static int firstAbove(int[] sorted, int value) {
+        int lo = 0;
+        int hi = sorted.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted[mid] <= value) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * @return true if some started process has not completed yet
+     */
+    public boolean hasActive() {
+        return active != null;
+    }
+
+    /**
+     * @return number of started process instances that have not completed yet
+     */
+    public int activeCount() {
+        return activeInstances;
+    }
+
+    /**
+     * @return completion time of the earliest active process
+     */
+    public int nextCompletionTime() {
+        return active.event.time();
+    }
+
+    /**
+     * Cheap signature of the active events relative to the clock: equal for two
+     * simulations whose pending events are the same processes at the same
+     * distances from their current times (up to collisions).
+     */
+    public long activeSignature() {
+        int count = activeCount();
+        long relativeEnds = activeEndSum - (long) count * currentTime;
+        return Zobrist.process(count) ^ (relativeEnds * 0x9E3779B97F4A7C15L) ^ activeProcessKey;
+    }
+
+    /**
+     * Hash of the state as the start decisions see it: the stocks clipped at
+     * {@link CompiledModel#maxNeed} plus the {@link #activeSignature()}. Stocks
+     * that grow past every need no longer change it, so a periodic schedule
+     * with such drifting resources still repeats the same key.
+     */
+    public long decisionKey() {
+        return clippedHash + activeSignature();
+    }
+
+    /**
+     * Active events relative to the clock, as sorted distinct
+     * {@code (completion - now) << 32 | process} keys, each followed by its
+     * instance count. Equal for equal layouts however the starts were batched.
+     */
+    public long[] activeLayout() {
+        EventHeap[] nodes = EventHeap.nodes(active);
+        int size = nodes.length;
+        long[] keys = new long[size];
+        long[] counts = new long[size];
+        for (int i = 0; i < size; i++) {
+            Event ev = nodes[i].event;
+            keys[i] = (long) (ev.time() - currentTime) << 32 | ev.process();
+            counts[i] = ev.count();
+        }
+        long[] distinct = keys.clone();
+        Arrays.sort(distinct);
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || distinct[n - 1] != distinct[i]) distinct[n++] = distinct[i];
+        }
+        long[] out = new long[2 * n];
+        for (int i = 0; i < n; i++) out[2 * i] = distinct[i];
+        for (int i = 0; i < size; i++) out[2 * Arrays.binarySearch(distinct, 0, n, keys[i]) + 1] += counts[i];
+        return out;
+    }
+
+    /**
+     * Jumps the whole simulation ahead in time: every stock changes by the
+     * given delta and the clock, the active events and the last completion
+     * time move by {@code dt}. Used to skip repetitions of a periodic schedule.
+     *
+     * @param delta per-resource stock change
+     * @param dt time shift, non-negative
+     */
+    public void fastForward(int[] delta, int dt) {
+        for (int r = 0; r < delta.length; r++) adjust(r, delta[r]);
+        EventHeap shifted = null;
+        for (EventHeap h = active; h != null; h = EventHeap.pop(h)) {
+            Event ev = h.event;
+            hash += ev.count() * (Zobrist.event(ev.time() + dt, ev.process()) - Zobrist.event(ev.time(), ev.process()));
+            shifted = EventHeap.insert(shifted, new Event(ev.time() + dt, ev.process(), ev.count()));
+        }
+        active = shifted;
+        activeEndSum += (long) activeInstances * dt;
+        currentTime += dt;
+        if (lastCompletionTime >= 0) lastCompletionTime += dt;
+    }
+
+    /**
+     * Moves the clock to the given time without applying completions.
+     */
+    public void advanceTo(int time) {
+        currentTime = time;
+    }
+
+    public int currentTime() {
+        return currentTime;
+    }
+
+    /**
+     * @return latest completion time applied so far, or -1 if none
+     */
+    public int lastCompletionTime() {
+        return lastCompletionTime;
+    }
+
+    /**
+     * @return current quantity of one resource
+     */
+    public int stock(int resource) {
+        return stocks.get(resource);
+    }
+
+    /**
+     * @return snapshot of the whole stock vector
+     */
+    public int[] stocks() {
+        return stocks.toArray();
+    }
+
+    /**
+     * @return stock vector once every active process has completed
+     */
+    public int[] projectedStocks() {
+        int[] out = stocks.toArray();
+        for (EventHeap node : EventHeap.nodes(active)) {
+            int process = node.event.process();
+            int[] ids = model.resultIds(process);
+            int[] qty = model.resultQuantities(process);
+            for (int i = 0; i < ids.length; i++) out[ids[i]] += node.event.count() * qty[i];
+        }
+        return out;
+    }
+
+    /**
+     * @return sum of the stocks of all optimization target resources
+     */
+    public long targetTotal() {
+        return targetTotal;
+    }
+
+    /**
+     * @return sum of the stocks of all non-target resources
+     */
+    public long otherTotal() {
+        return otherTotal;
+    }
+
+    /**
+     * Hash of the current time, stocks and pending events. Two simulations with
+     * the same hash have (up to collisions) the same future.
+     */
+    public long stateHash() {
+        return hash + Zobrist.time(currentTime);
+    }
+
+    public CompiledModel model() {
+        return model;
+    }
+}
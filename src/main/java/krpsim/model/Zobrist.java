@@ -0,0 +1,55 @@
+package krpsim.model;
+
+/**
+ * Zobrist-style keys for simulation states.
+ *
+ * Stock levels are unbounded, so instead of random tables each (resource, level)
+ * and (time, process) pair is mapped to a pseudo-random key by a 64-bit mixer.
+ * A state hash is the sum of the keys of its parts; sums (rather than XOR) keep
+ * two identical pending events from cancelling each other out.
+ */
+final class Zobrist {
+
+    private static final long STOCK_SALT = 0x9E3779B97F4A7C15L;
+    private static final long EVENT_SALT = 0xC2B2AE3D27D4EB4FL;
+    private static final long TIME_SALT = 0x165667B19E3779F9L;
+    private static final long PROCESS_SALT = 0x27D4EB2F165667C5L;
+
+    private Zobrist() {
+    }
+
+    /**
+     * @return key of one resource held at the given level
+     */
+    static long stock(int resource, int level) {
+        return mix(((long) resource << 32 | (level & 0xFFFFFFFFL)) ^ STOCK_SALT);
+    }
+
+    /**
+     * @return key of one pending completion event
+     */
+    static long event(int time, int process) {
+        return mix(((long) time << 32 | (process & 0xFFFFFFFFL)) ^ EVENT_SALT);
+    }
+
+    /**
+     * @return key of a process, independent of time
+     */
+    static long process(int process) {
+        return mix(process ^ PROCESS_SALT);
+    }
+
+    /**
+     * @return key of the simulation clock
+     */
+    static long time(int time) {
+        return mix(time ^ TIME_SALT);
+    }
+
+    // SplitMix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -1,17 +1,13 @@
 package krpsim.optimizer;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.PriorityQueue;
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import krpsim.model.Event;
-import krpsim.model.Process;
-import krpsim.utils.Parser;
+import krpsim.model.CompiledModel;
+import krpsim.model.Simulation;
 
 /**
  * Beam-search based optimization strategy.
@@ -19,11 +15,30 @@ import krpsim.utils.Parser;
  * <p>The optimizer explores multiple promising simulation states in parallel,
  * keeping only the top {@code beamWidth} states (by heuristic score) at each
  * expansion step.
+ *
+ * <p>Successors are first scored as cheap (score, parent, process) candidates;
+ * a child state is only built once it has survived selection, so each layer
+ * allocates O(beamWidth) states instead of one per successor. Survivors are
+ * polled from a {@link PriorityQueue} fed in generation order (parent position
+ * in the layer, then process id), which resolves equal scores exactly as a
+ * queue of the child states themselves would.
+ *
+ * <p>With more than one thread, the states of a layer are expanded concurrently
+ * on a {@link ForkJoinPool}. Each worker collects its own candidates and they
+ * are concatenated in layer order, so the result is identical to the sequential run.
+ *
+ * <p>The {@link SearchBudget} is checked between layers, counting every state
+ * of a layer as a node; a run cut short returns its best terminal state so far.
+ *
+ * <p>Results carry the run's {@link OptimizationStats}; every layer is also
+ * a JDK Flight Recorder event (see {@link SearchEvents}).
  */
 public class BeamSearchOptimizer implements OptimizationStrategy {
 
     private static final int DEFAULT_BEAM_WIDTH = 8;
     private final int beamWidth;
+    private final int threads;
+    private final SearchBudget budget;
 
     /**
      * Creates a beam-search optimizer with the default beam width.
@@ -33,12 +48,35 @@ public class BeamSearchOptimizer implements OptimizationStrategy {
     }
 
     /**
-     * Creates a beam-search optimizer.
+     * Creates a single-threaded beam-search optimizer.
      *
      * @param beamWidth maximum number of states kept at each search layer
      */
     public BeamSearchOptimizer(int beamWidth) {
+        this(beamWidth, 1);
+    }
+
+    /**
+     * Creates a beam-search optimizer.
+     *
+     * @param beamWidth maximum number of states kept at each search layer
+     * @param threads number of worker threads expanding each layer (1 = sequential)
+     */
+    public BeamSearchOptimizer(int beamWidth, int threads) {
+        this(beamWidth, threads, SearchBudget.unlimited());
+    }
+
+    /**
+     * Creates a beam-search optimizer whose runs are capped by a budget.
+     *
+     * @param beamWidth maximum number of states kept at each search layer
+     * @param threads number of worker threads expanding each layer (1 = sequential)
+     * @param budget limits of each run
+     */
+    public BeamSearchOptimizer(int beamWidth, int threads, SearchBudget budget) {
         this.beamWidth = beamWidth;
+        this.threads = Math.max(1, threads);
+        this.budget = budget;
     }
 
     /**
@@ -46,33 +84,27 @@ public class BeamSearchOptimizer implements OptimizationStrategy {
      */
     @Override
     public String getName() {
-        return "Beam Search (width=" + beamWidth + ")";
+        return "Beam Search (width=" + beamWidth + ", threads=" + threads + ")";
     }
 
     /**
      * Search node used by the beam-search frontier.
      */
-    private static class SearchState implements Comparable<SearchState> {
+    private static class SearchState {
 
-        Map<String, Integer> stocks;
-        PriorityQueue<Event> activeProcesses;
-        List<String> trace;
-        int currentTime;
+        Simulation sim;
+        TraceNode trace;
         double heuristicScore;
 
         /**
-         * Creates a deep-copy-ready search state snapshot.
+         * Creates a search state; simulation storage and trace are shared, not copied.
          */
-        SearchState(Map<String, Integer> stocks,
-                    PriorityQueue<Event> active,
-                    List<String> trace,
-                    int time,
+        SearchState(Simulation sim,
+                    TraceNode trace,
                     double score) {
 
-            this.stocks = new LinkedHashMap<>(stocks);
-            this.activeProcesses = new PriorityQueue<>(active);
-            this.trace = new ArrayList<>(trace);
-            this.currentTime = time;
+            this.sim = sim;
+            this.trace = trace;
             this.heuristicScore = score;
         }
 
@@ -80,398 +112,527 @@ public class BeamSearchOptimizer implements OptimizationStrategy {
          * @return independent copy of the current state for branching
          */
         SearchState copy() {
-            return new SearchState(stocks, activeProcesses, trace, currentTime, heuristicScore);
-        }
-
-        /**
-         * Higher heuristic score means higher priority in the queue.
-         */
-        @Override
-        public int compareTo(SearchState other) {
-            return Double.compare(other.heuristicScore, this.heuristicScore);
+            return new SearchState(sim.copy(), trace, heuristicScore);
         }
     }
 
+    /**
+     * Per-run data shared (read-only) by all workers.
+     *
+     * @param targetNeeds per-process quantity of target resources consumed at start
+     * @param otherNeeds per-process quantity of non-target resources consumed at start
+     * @param name strategy name for the flight recorder events
+     */
+    private record Context(CompiledModel model,
+                           int maxDelay,
+                           double bestRate,
+                           long[] targetNeeds,
+                           long[] otherNeeds,
+                           String name) {}
+
     /**
      * Runs beam search over possible process schedules and returns the best found plan.
      *
-     * @param config parsed simulation configuration
+     * @param model compiled simulation configuration
      * @param maxDelay upper bound on simulated time for optimization
      * @return optimization result containing trace, final stocks and score
      */
     @Override
-    public OptimizationResult optimize(Parser.Config config, int maxDelay) {
+    public OptimizationResult optimize(CompiledModel model, int maxDelay) {
 
-        List<Process> processes = config.processes();
-        Set<String> optimize = config.optimizeTargets();
+        return run(model, maxDelay, null);
+    }
 
-        Map<String, Integer> baseline = new HashMap<>();
-        for (String k : optimize) baseline.put(k, 0);
+    /**
+     * Reports the best terminal state each time a layer improves on it.
+     */
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay, IncumbentListener listener) {
 
-        Set<Process> relevantProcesses = buildRelevantProcessGraph(processes, optimize);
+        return run(model, maxDelay, listener);
+    }
 
-        PriorityQueue<SearchState> beam = new PriorityQueue<>();
+    private OptimizationResult run(CompiledModel model, int maxDelay, IncumbentListener listener) {
 
-        SearchState initialState = new SearchState(
-                new LinkedHashMap<>(config.initialStocks()),
-                new PriorityQueue<>(),
-                new ArrayList<>(),
-                0,
-                0
-        );
+        SearchBudget.Meter meter = budget.start();
 
-        beam.add(initialState);
+        long statesExpanded = 0;
 
-        SearchState bestFinalState = null;
-        double bestFinalScore = Double.NEGATIVE_INFINITY;
+        long statesGenerated = 0;
 
-        // Expand frontier layer by layer, always keeping only top-N states.
-        while (!beam.isEmpty()) {
+        long eventsProcessed = 0;
 
-            PriorityQueue<SearchState> nextBeam = new PriorityQueue<>();
+        long peakFrontier = 0;
 
-            for (SearchState state : beam) {
+        long survivors = 0;
 
-                while (!state.activeProcesses.isEmpty()
-                        && state.activeProcesses.peek().time() <= state.currentTime) {
+        long firstFoundMs = -1;
 
-                    Event ev = state.activeProcesses.poll();
-                    Process p = findProcess(processes, ev.processName());
+        long bestFoundMs = -1;
 
-                    if (p != null) applyResults(state.stocks, p);
-                }
+        // The best achievable rate does not depend on the state, so compute it once.
+        Context ctx = buildContext(model, maxDelay);
+
+        SearchState initialState = new SearchState(
+                new Simulation(model),
+                null,
+                0
+        );
 
-                if (state.currentTime > maxDelay) {
+        List<SearchState> beam = List.of(initialState);
 
-                    double finalScore =
-                            calculateScore(state.stocks, optimize, state.currentTime, baseline);
+        SearchState bestFinalState = null;
+        double bestFinalScore = Double.NEGATIVE_INFINITY;
 
-                    if (finalScore > bestFinalScore) {
-                        bestFinalScore = finalScore;
-                        bestFinalState = state;
-                    }
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
 
-                    continue;
-                }
+        boolean recording = SearchEvents.recording();
 
-                List<Process> candidates = getRunnable(state.stocks, processes);
+        try {
 
-                // Restrict candidates to the backward-reachable subgraph for target resources.
-                if (!optimize.contains("time") || optimize.size() > 1) {
-                    candidates = candidates.stream()
-                            .filter(relevantProcesses::contains)
-                            .toList();
-                }
+            // Expand frontier layer by layer, always keeping only top-N states.
+            while (!beam.isEmpty()) {
 
-                boolean expanded = false;
+                if (meter.exhausted()) break;
 
-                for (Process p : candidates) {
+                SearchEvents.Expansion event = recording ? new SearchEvents.Expansion() : null;
 
-                    if (!isRunnable(state.stocks, p)) continue;
+                if (event != null) event.begin();
 
-                    SearchState child = state.copy();
+                LayerTask task = new LayerTask(beam, 0, beam.size(), grain(beam.size()), ctx);
 
-                    consumeResources(child.stocks, p);
+                Selection selection = pool != null ? pool.invoke(task) : task.compute();
 
-                    child.trace.add(child.currentTime + ":" + p.name());
+                statesExpanded += beam.size();
 
-                    child.activeProcesses.add(
-                            new Event(child.currentTime + p.delay(), p.name())
-                    );
+                statesGenerated += selection.generated;
 
-                    if (!child.activeProcesses.isEmpty()) {
-                        child.currentTime = child.activeProcesses.peek().time();
-                    }
+                eventsProcessed += selection.events;
 
-                    child.heuristicScore =
-                            calculateHeuristic(child.stocks,
-                                    child.currentTime,
-                                    optimize,
-                                    maxDelay,
-                                    processes,
-                                    baseline);
+                peakFrontier = Math.max(peakFrontier, beam.size());
 
-                    nextBeam.add(child);
+                if (selection.terminal != null && selection.terminalScore > bestFinalScore) {
+                    bestFinalScore = selection.terminalScore;
+                    bestFinalState = selection.terminal;
 
-                    expanded = true;
-                }
+                    bestFoundMs = meter.elapsedMs();
 
-                if (!expanded && !state.activeProcesses.isEmpty()) {
+                    if (firstFoundMs < 0) firstFoundMs = bestFoundMs;
 
-                    SearchState waitState = state.copy();
+                    if (listener != null
+                            && !listener.improved(new IncumbentListener.Incumbent(toResult(model, bestFinalState),
+                                    meter.elapsedMs(), statesExpanded))) {
+                        break;
+                    }
+                }
 
-                    waitState.currentTime = state.activeProcesses.peek().time();
+                if (meter.charge(beam.size())) break;
 
-                    waitState.heuristicScore =
-                            calculateHeuristic(waitState.stocks,
-                                    waitState.currentTime,
-                                    optimize,
-                                    maxDelay,
-                                    processes,
-                                    baseline);
+                // Keep only the best states according to the heuristic; build just those.
+                int layerSize = beam.size();
 
-                    nextBeam.add(waitState);
-                }
+                beam = buildSurvivors(beam, selection.candidates);
 
-                // Dead-end state with no active/runnable process: evaluate as terminal.
-                if (!expanded && state.activeProcesses.isEmpty()) {
+                survivors += beam.size();
 
-                    double finalScore =
-                            calculateScore(state.stocks,
-                                    optimize,
-                                    state.currentTime,
-                                    baseline);
+                if (event != null && event.shouldCommit()) {
 
-                    if (finalScore > bestFinalScore) {
-                        bestFinalScore = finalScore;
-                        bestFinalState = state;
-                    }
+                    event.strategy = ctx.name();
+                    event.expanded = layerSize;
+                    event.generated = selection.generated;
+                    event.prunedByBound = selection.generated - beam.size();
+                    event.frontier = beam.size();
+                    event.commit();
                 }
             }
 
-            beam.clear();
+        } finally {
+
+            if (pool != null) pool.shutdown();
+        }
 
-            int count = 0;
+        OptimizationResult result;
 
-            // Keep only the best states according to the heuristic.
-            while (!nextBeam.isEmpty() && count < beamWidth) {
+        if (bestFinalState != null) {
 
-                beam.add(nextBeam.poll());
+            result = toResult(model, bestFinalState);
 
-                count++;
-            }
+        } else {
 
-            if (beam.isEmpty()) break;
+            OptimizationStrategy fallback = new GreedyOptimizer();
+            result = listener != null ? fallback.optimize(model, maxDelay, listener) : fallback.optimize(model, maxDelay);
         }
 
-        if (bestFinalState != null) {
+        // Every scored candidate that was not kept fell off the beam.
+        result = result.withStats(new OptimizationStats(
+                statesGenerated,
+                statesExpanded,
+                statesGenerated - survivors,
+                0,
+                peakFrontier,
+                eventsProcessed,
+                firstFoundMs,
+                bestFoundMs,
+                meter.elapsedMs()));
 
-            while (!bestFinalState.activeProcesses.isEmpty()) {
+        SearchEvents.finished(ctx.name(), result);
 
-                Event ev = bestFinalState.activeProcesses.poll();
+        return result;
+    }
 
-                Process p = findProcess(processes, ev.processName());
+    /**
+     * Builds the result of a terminal state, completing its remaining processes
+     * on a copy so the state itself is left untouched.
+     */
+    private OptimizationResult toResult(CompiledModel model, SearchState state) {
 
-                if (p != null) applyResults(bestFinalState.stocks, p);
-            }
+        Simulation sim = state.sim.copy();
 
-            int finalTime = bestFinalState.currentTime;
+        sim.completeAll();
 
-            boolean finished =
-                    bestFinalState.activeProcesses.isEmpty()
-                            && getRunnable(bestFinalState.stocks, processes).isEmpty();
+        int finalTime = sim.currentTime();
 
-            double score =
-                    calculateScore(bestFinalState.stocks,
-                            optimize,
-                            finalTime,
-                            baseline);
-
-            return new OptimizationResult(
-                    List.copyOf(bestFinalState.trace),
-                    new LinkedHashMap<>(bestFinalState.stocks),
-                    finalTime,
-                    finished,
-                    score
-            );
-        }
+        boolean finished = !sim.hasRunnable();
 
-        OptimizationStrategy fallback = new GreedyOptimizer();
-        return fallback.optimize(config, maxDelay);
+        double score =
+                calculateScore(model,
+                        sim,
+                        finalTime);
+
+        return new OptimizationResult(
+                TraceNode.toList(state.trace, model),
+                model.toStockMap(sim.stocks(),
+                        TraceNode.startedProcesses(state.trace, model.processCount())),
+                finalTime,
+                finished,
+                score
+        );
     }
 
     /**
-     * Estimates future potential of a state for beam ordering.
+     * Number of layer states handled by one worker leaf.
      */
-    private double calculateHeuristic(
-            Map<String, Integer> stocks,
-            int currentTime,
-            Set<String> optimize,
-            int maxDelay,
-            List<Process> processes,
-            Map<String, Integer> baseline) {
+    private int grain(int layerSize) {
 
-        double score = 0;
+        return Math.max(1, (layerSize + threads - 1) / threads);
+    }
 
-        for (var e : stocks.entrySet()) {
+    /**
+     * Candidate successor of a layer state, not built yet.
+     *
+     * @param key generation order, see {@link #candidateKey}
+     */
+    private record Candidate(double score, long key) {}
 
-            if (optimize.contains(e.getKey())) {
+    /**
+     * Candidate successors of a range of the layer, in generation order, plus
+     * its best terminal state.
+     */
+    private static final class Selection {
 
-                int base = baseline.getOrDefault(e.getKey(), 0);
+        final List<Candidate> candidates = new ArrayList<>();
+        SearchState terminal;
+        double terminalScore = Double.NEGATIVE_INFINITY;
+        long generated;
+        long events;
 
-                score += (e.getValue() - base) * 5000.0;
+        /**
+         * Folds a later range into this one; earlier terminals win ties.
+         */
+        void merge(Selection later) {
 
-            } else {
+            candidates.addAll(later.candidates);
 
-                score += e.getValue() * 2.0;
+            generated += later.generated;
+            events += later.events;
+
+            if (later.terminal != null && later.terminalScore > terminalScore) {
+                terminal = later.terminal;
+                terminalScore = later.terminalScore;
             }
         }
+    }
 
-        int remainingTime = Math.max(0, maxDelay - currentTime);
-
-        double bestRate = 0;
+    /**
+     * Scores the successors of a contiguous range of a beam layer, splitting it
+     * across the pool. Each leaf fills its own {@link Selection}.
+     */
+    private final class LayerTask extends RecursiveTask<Selection> {
 
-        for (Process p : processes) {
+        private final List<SearchState> layer;
+        private final int from;
+        private final int to;
+        private final int grain;
+        private final Context ctx;
 
-            if (p.delay() <= 0) continue;
+        LayerTask(List<SearchState> layer, int from, int to, int grain, Context ctx) {
 
-            double value = 0;
+            this.layer = layer;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+            this.ctx = ctx;
+        }
 
-            for (var r : p.results().entrySet()) {
+        @Override
+        protected Selection compute() {
 
-                if (optimize.contains(r.getKey())) {
+            if (to - from <= grain) {
 
-                    value += r.getValue() * 1000.0;
+                Selection selection = new Selection();
 
-                } else {
+                for (int i = from; i < to; i++) {
 
-                    value += r.getValue() * 10.0;
+                    expand(layer.get(i), i, selection, ctx);
                 }
+
+                return selection;
             }
 
-            bestRate = Math.max(bestRate, value / p.delay());
-        }
+            int mid = from + (to - from + 1) / 2;
 
-        score += bestRate * remainingTime;
+            LayerTask right = new LayerTask(layer, mid, to, grain, ctx);
 
-        if (optimize.contains("time")) {
+            right.fork();
 
-            score -= currentTime * 10.0;
-        }
+            Selection selection = new LayerTask(layer, from, mid, grain, ctx).compute();
 
-        return score;
+            selection.merge(right.join());
+
+            return selection;
+        }
     }
 
     /**
-     * Computes final objective score for a terminal state.
+     * Applies due completions to a beam state and offers its successors as
+     * candidates, without building them.
+     *
+     * @param index position of the state in its layer, used for tie-breaking
      */
-    private double calculateScore(Map<String, Integer> stocks,
-                                  Set<String> optimize,
-                                  int finalTime,
-                                  Map<String, Integer> baseline) {
+    private void expand(SearchState state,
+                        int index,
+                        Selection selection,
+                        Context ctx) {
 
-        double score = 0;
+        CompiledModel model = ctx.model();
 
-        for (var e : stocks.entrySet()) {
+        Simulation sim = state.sim;
 
-            if (optimize.contains(e.getKey())) {
+        selection.events += sim.completeUntil(sim.currentTime());
 
-                int base = baseline.getOrDefault(e.getKey(), 0);
+        if (sim.currentTime() > ctx.maxDelay()) {
 
-                score += (e.getValue() - base) * 1000.0;
-            }
+            offerTerminal(selection, state, calculateScore(model, sim, sim.currentTime()));
+
+            return;
         }
 
-        if (optimize.contains("time")) {
+        boolean expanded = false;
 
-            score -= finalTime * 10.0;
+        // Candidates are restricted to the backward-reachable subgraph for target resources.
+        for (int p = sim.nextRunnable(0); p >= 0; p = sim.nextRunnable(p + 1)) {
+
+            if (!model.isRelevant(p)) continue;
+
+            // The child's clock moves to its earliest completion, which is either
+            // an already active process or the one just started.
+            int end = sim.currentTime() + model.delay(p);
+
+            int childTime = sim.hasActive() ? Math.min(sim.nextCompletionTime(), end) : end;
+
+            double score =
+                    heuristic(sim.targetTotal() - ctx.targetNeeds()[p],
+                            sim.otherTotal() - ctx.otherNeeds()[p],
+                            childTime,
+                            ctx);
+
+            selection.candidates.add(new Candidate(score, candidateKey(index, p)));
+
+            selection.generated++;
+
+            expanded = true;
         }
 
-        return score;
+        if (!expanded && sim.hasActive()) {
+
+            double score =
+                    heuristic(sim.targetTotal(),
+                            sim.otherTotal(),
+                            sim.nextCompletionTime(),
+                            ctx);
+
+            selection.candidates.add(new Candidate(score, candidateKey(index, -1)));
+
+            selection.generated++;
+        }
+
+        // Dead-end state with no active/runnable process: evaluate as terminal.
+        if (!expanded && !sim.hasActive()) {
+
+            offerTerminal(selection, state, calculateScore(model, sim, sim.currentTime()));
+        }
     }
 
-    /**
-     * Finds process by name.
-     */
-    private Process findProcess(List<Process> processes, String name) {
+    private static void offerTerminal(Selection selection, SearchState state, double score) {
 
-        return processes.stream()
-                .filter(p -> p.name().equals(name))
-                .findFirst()
-                .orElse(null);
+        if (score > selection.terminalScore) {
+            selection.terminalScore = score;
+            selection.terminal = state;
+        }
     }
 
     /**
-     * @return all processes runnable with current stock levels
+     * Encodes a candidate as its generation order: parent position, then process
+     * id (a wait successor, process -1, sorts before any start of the same parent).
      */
-    private List<Process> getRunnable(Map<String, Integer> stocks,
-                                      List<Process> processes) {
+    private static long candidateKey(int parentIndex, int process) {
 
-        return processes.stream()
-                .filter(p -> isRunnable(stocks, p))
-                .toList();
+        return ((long) parentIndex << 32) | (process + 1);
     }
 
     /**
-     * Checks if all required inputs for a process are currently available.
+     * Selects the best {@code beamWidth} candidates and materializes them as
+     * search states, best first.
      */
-    private boolean isRunnable(Map<String, Integer> stocks, Process p) {
+    private List<SearchState> buildSurvivors(List<SearchState> layer, List<Candidate> candidates) {
+
+        // Higher score first; equal scores come out in the queue's own order,
+        // which only depends on the insertion order of the candidates.
+        PriorityQueue<Candidate> queue = new PriorityQueue<>((a, b) -> Double.compare(b.score(), a.score()));
+
+        queue.addAll(candidates);
+
+        List<SearchState> next = new ArrayList<>(Math.min(beamWidth, candidates.size()));
+
+        while (!queue.isEmpty() && next.size() < beamWidth) {
+
+            Candidate candidate = queue.poll();
+
+            SearchState parent = layer.get((int) (candidate.key() >>> 32));
+
+            int p = (int) candidate.key() - 1;
+
+            SearchState child = parent.copy();
 
-        for (var need : p.needs().entrySet()) {
+            if (p >= 0) {
 
-            if (stocks.getOrDefault(need.getKey(), 0) < need.getValue()) {
+                child.trace = TraceNode.append(child.trace, parent.sim.currentTime(), p);
 
-                return false;
+                child.sim.start(p);
             }
+
+            child.sim.advanceTo(child.sim.nextCompletionTime());
+
+            child.heuristicScore = candidate.score();
+
+            next.add(child);
         }
 
-        return true;
+        return next;
     }
 
     /**
-     * Subtracts process inputs from stocks when the process starts.
+     * Precomputes the state-independent data used to score candidates.
      */
-    private void consumeResources(Map<String, Integer> stocks, Process p) {
+    private Context buildContext(CompiledModel model, int maxDelay) {
 
-        p.needs().forEach((k, v) -> stocks.merge(k, -v, Integer::sum));
-    }
+        long[] targetNeeds = new long[model.processCount()];
 
-    /**
-     * Adds process outputs to stocks when the process completes.
-     */
-    private void applyResults(Map<String, Integer> stocks, Process p) {
+        long[] otherNeeds = new long[model.processCount()];
+
+        for (int p = 0; p < model.processCount(); p++) {
+
+            int[] ids = model.needIds(p);
+            int[] qty = model.needQuantities(p);
+
+            for (int i = 0; i < ids.length; i++) {
+
+                if (model.isTarget(ids[i])) {
+
+                    targetNeeds[p] += qty[i];
 
-        p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
+                } else {
+
+                    otherNeeds[p] += qty[i];
+                }
+            }
+        }
+
+        return new Context(model, maxDelay, bestValueRate(model), targetNeeds, otherNeeds, getName());
     }
 
     /**
-     * Builds a backward-reachable process set that can contribute to optimize targets.
+     * Best value per time unit over all processes, used to estimate future potential.
      */
-    private Set<Process> buildRelevantProcessGraph(List<Process> processes,
-                                                   Set<String> optimize) {
+    private double bestValueRate(CompiledModel model) {
 
-        Set<Process> relevant = new HashSet<>();
+        double bestRate = 0;
 
-        Set<String> neededResources = new HashSet<>();
+        for (int p = 0; p < model.processCount(); p++) {
 
-        if (optimize.contains("time") && optimize.size() == 1) {
+            if (model.delay(p) <= 0) continue;
 
-            return new HashSet<>(processes);
-        }
+            double value = 0;
+
+            int[] ids = model.resultIds(p);
+            int[] qty = model.resultQuantities(p);
+
+            for (int i = 0; i < ids.length; i++) {
 
-        for (String target : optimize) {
+                if (model.isTarget(ids[i])) {
 
-            if (!target.equals("time")) {
+                    value += qty[i] * 1000.0;
 
-                neededResources.add(target);
+                } else {
+
+                    value += qty[i] * 10.0;
+                }
             }
+
+            bestRate = Math.max(bestRate, value / model.delay(p));
         }
 
-        boolean changed = true;
+        return bestRate;
+    }
 
-        while (changed) {
+    /**
+     * Estimates future potential of a state for beam ordering, from its stock
+     * totals and clock.
+     */
+    private double heuristic(
+            long targetTotal,
+            long otherTotal,
+            int currentTime,
+            Context ctx) {
 
-            changed = false;
+        double score = targetTotal * 5000.0 + otherTotal * 2.0;
 
-            for (Process p : processes) {
+        int remainingTime = Math.max(0, ctx.maxDelay() - currentTime);
 
-                if (relevant.contains(p)) continue;
+        score += ctx.bestRate() * remainingTime;
 
-                boolean producesNeeded =
-                        p.results().keySet().stream()
-                                .anyMatch(neededResources::contains);
+        if (ctx.model().optimizesTime()) {
 
-                if (producesNeeded) {
+            score -= currentTime * 10.0;
+        }
 
-                    relevant.add(p);
+        return score;
+    }
 
-                    neededResources.addAll(p.needs().keySet());
+    /**
+     * Computes final objective score for a terminal state.
+     */
+    private double calculateScore(CompiledModel model,
+                                  Simulation sim,
+                                  int finalTime) {
 
-                    changed = true;
-                }
-            }
+        double score = sim.targetTotal() * 1000.0;
+
+        if (model.optimizesTime()) {
+
+            score -= finalTime * 10.0;
         }
 
-        return relevant;
+        return score;
     }
 }
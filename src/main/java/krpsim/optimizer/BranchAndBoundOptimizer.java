@@ -1,16 +1,19 @@
 package krpsim.optimizer;
 
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.PriorityQueue;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
-import krpsim.model.Event;
-import krpsim.model.Process;
-import krpsim.utils.Parser;
+import krpsim.model.CompiledModel;
+import krpsim.model.Simulation;
 
 /**
  * Branch and Bound optimization with A* heuristic.
@@ -24,7 +27,26 @@ import krpsim.utils.Parser;
  *    where g = actual cost so far, h = optimistic estimate of remaining value
  * 2. Expand best state by trying all possible process starts
  * 3. Prune states that cannot beat current best
- * 4. Continue until time limit or queue empty
+ *    h is a resource-flow LP bound (see {@link FlowBound}), cached per stock
+ *    vector and inherited by children. The relaxation has no time dimension:
+ *    it bounds what the stocks allow with unlimited time, so it stays admissible
+ *    but is loose when maxDelay, not the stocks, limits the schedule
+ * 4. Skip states already expanded (same time, stocks and active events)
+ *    through another start order, using a bounded transposition table
+ * 5. Continue until the {@link SearchBudget} is exhausted or the queue is empty
+ * 
+ * With several threads, each worker keeps its own frontier and transposition
+ * table and steals the best open state of another worker when its own frontier
+ * runs dry. The incumbent is shared through an atomic reference, so every worker
+ * prunes against the global best as soon as it is found.
+ * 
+ * As an anytime search, each new incumbent is also reported to an
+ * {@link IncumbentListener}, which can stop the search early and supply
+ * a better score found elsewhere to prune against. The budget's token
+ * stops it from any thread.
+ * 
+ * Each result carries the run's {@link OptimizationStats}, and batches of
+ * expansions are reported as JDK Flight Recorder events (see {@link SearchEvents}).
  * 
  * Time complexity: Potentially exponential, but bounded by time limit
  * Quality: Optimal or near-optimal (depending on time limit)
@@ -32,39 +54,80 @@ import krpsim.utils.Parser;
 public class BranchAndBoundOptimizer implements OptimizationStrategy {
     
     private static final long DEFAULT_TIME_LIMIT_MS = 5000; // 5 seconds
-    private final long timeLimitMs;
-    private long startTime;
+    private static final int TRANSPOSITION_BITS = 20; // 1M entries
+    private static final int EVENT_BATCH = 256; // expansions per flight recorder event
+    private final SearchBudget budget;
+    private final int threads;
+    private volatile long lastStatesExplored;
+    private volatile long lastElapsedMs;
+    private volatile boolean lastCompleted;
     
     public BranchAndBoundOptimizer() {
         this(DEFAULT_TIME_LIMIT_MS);
     }
     
     public BranchAndBoundOptimizer(long timeLimitMs) {
-        this.timeLimitMs = timeLimitMs;
+        this(timeLimitMs, 1);
+    }
+    
+    /**
+     * @param timeLimitMs wall-clock search budget
+     * @param threads number of search workers (1 = sequential)
+     */
+    public BranchAndBoundOptimizer(long timeLimitMs, int threads) {
+        this(SearchBudget.ofMillis(timeLimitMs), threads);
+    }
+    
+    /**
+     * @param budget limits of each run; states expanded count as nodes
+     * @param threads number of search workers (1 = sequential)
+     */
+    public BranchAndBoundOptimizer(SearchBudget budget, int threads) {
+        this.budget = budget;
+        this.threads = Math.max(1, threads);
     }
     
     @Override
     public String getName() {
-        return "Branch & Bound A* (limit=" + timeLimitMs + "ms)";
+        String limit = budget.hasTimeLimit() ? budget.timeLimitMs() + "ms" : "none";
+        return "Branch & Bound A* (limit=" + limit + ", threads=" + threads + ")";
+    }
+    
+    /**
+     * @return number of states expanded by the last run, over all workers
+     */
+    public long getStatesExplored() {
+        return lastStatesExplored;
+    }
+    
+    /**
+     * @return true if the last run searched its whole tree, so its result is optimal
+     */
+    public boolean isComplete() {
+        return lastCompleted;
+    }
+    
+    /**
+     * @return expansion throughput of the last run in states per second
+     */
+    public double getStatesPerSecond() {
+        return lastStatesExplored * 1000.0 / Math.max(1, lastElapsedMs);
     }
     
     /**
      * Search state with A* scoring.
      */
     private static class SearchState implements Comparable<SearchState> {
-        Map<String, Integer> stocks;
-        PriorityQueue<Event> activeProcesses;
-        List<String> trace;
-        int currentTime;
+        Simulation sim;
+        TraceNode trace;
         double actualScore; // g(n): actual score achieved so far
         double remainingEstimate; // h(n): optimistic remaining value
+        // Upper bound on the final target total, inherited from the parent until recomputed.
+        double targetBound = Double.POSITIVE_INFINITY;
         
-        SearchState(Map<String, Integer> stocks, PriorityQueue<Event> active,
-                   List<String> trace, int time, double actual, double remaining) {
-            this.stocks = new LinkedHashMap<>(stocks);
-            this.activeProcesses = new PriorityQueue<>(active);
-            this.trace = new ArrayList<>(trace);
-            this.currentTime = time;
+        SearchState(Simulation sim, TraceNode trace, double actual, double remaining) {
+            this.sim = sim;
+            this.trace = trace;
             this.actualScore = actual;
             this.remainingEstimate = remaining;
         }
@@ -77,241 +140,421 @@ public class BranchAndBoundOptimizer implements OptimizationStrategy {
         }
         
         SearchState copy() {
-            return new SearchState(stocks, activeProcesses, trace, currentTime, 
-                                 actualScore, remainingEstimate);
+            SearchState copy = new SearchState(sim.copy(), trace, actualScore, remainingEstimate);
+            copy.targetBound = targetBound;
+            return copy;
         }
         
         @Override
         public int compareTo(SearchState other) {
-            // Higher estimated total is better
-            return Double.compare(other.f(), this.f());
+            // Higher estimated total is better; among equal bounds (unbounded
+            // relaxations included), the higher actual score first
+            int c = Double.compare(other.f(), this.f());
+            return c != 0 ? c : Double.compare(other.actualScore, this.actualScore);
         }
     }
     
     @Override
-    public OptimizationResult optimize(Parser.Config config, int maxDelay) {
-        startTime = System.currentTimeMillis();
-        
-        List<Process> processes = config.processes();
-        Set<String> optimize = config.optimizeTargets();
-        Map<String, Integer> baseline = new HashMap<>();
-        // Baseline = 0 for optimize targets so spending (money) is not penalized; only gains matter
-        for (String k : optimize) baseline.put(k, 0);
-        
-        // Priority queue for A* search
-        PriorityQueue<SearchState> openSet = new PriorityQueue<>();
+    public OptimizationResult optimize(CompiledModel model, int maxDelay) {
+        return run(model, maxDelay, null);
+    }
+    
+    /**
+     * Reports each new incumbent as soon as a worker finds it.
+     */
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        return run(model, maxDelay, listener);
+    }
+    
+    private OptimizationResult run(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        Search search = new Search(model, maxDelay, listener, budget.start());
         
         SearchState initialState = new SearchState(
-            new LinkedHashMap<>(config.initialStocks()),
-            new PriorityQueue<>(),
-            new ArrayList<>(),
-            0,
+            new Simulation(model),
+            null,
             0.0,
-            estimateRemainingValue(new LinkedHashMap<>(config.initialStocks()), 0,
-                                 processes, optimize, maxDelay, baseline)
+            Double.POSITIVE_INFINITY
+        );
+        search.push(search.workers[0], initialState);
+        
+        if (threads == 1) {
+            search.workers[0].call();
+        } else {
+            runWorkers(search);
+        }
+        
+        lastStatesExplored = search.statesExplored();
+        lastElapsedMs = search.meter.elapsedMs();
+        lastCompleted = search.pending.get() == 0;
+        
+        OptimizationResult result;
+        SearchState bestSolution = search.incumbent.get().state();
+        if (bestSolution != null) {
+            result = toResult(model, bestSolution);
+        } else {
+            // Fallback to greedy only if absolutely nothing was found
+            OptimizationStrategy fallback = new GreedyOptimizer();
+            result = listener != null ? fallback.optimize(model, maxDelay, listener) : fallback.optimize(model, maxDelay);
+        }
+        result = result.withStats(search.stats());
+        SearchEvents.finished(getName(), result);
+        return result;
+    }
+    
+    /**
+     * Builds the result of a solution state, completing its remaining processes
+     * on a copy so the state itself is left untouched.
+     */
+    private OptimizationResult toResult(CompiledModel model, SearchState solution) {
+        Simulation sim = solution.sim.copy();
+        sim.completeAll();
+        int finalTime = Math.max(sim.currentTime(), sim.lastCompletionTime());
+        
+        boolean finished = !sim.hasRunnable();
+        double finalScore = calculateActualScore(model, sim, finalTime);
+        
+        return new OptimizationResult(
+            TraceNode.toList(solution.trace, model),
+            model.toStockMap(sim.stocks(), TraceNode.startedProcesses(solution.trace, model.processCount())),
+            finalTime,
+            finished,
+            finalScore
         );
-        openSet.add(initialState);
+    }
+    
+    /**
+     * Runs every worker on its own thread and waits for all of them.
+     */
+    private void runWorkers(Search search) {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> f : pool.invokeAll(List.of(search.workers))) {
+                f.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Branch & Bound worker failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+    
+    /**
+     * Best solution found so far, shared by all workers.
+     */
+    private record Incumbent(double score, SearchState state) {}
+    
+    /**
+     * State of one optimization run shared by its workers.
+     */
+    private final class Search {
+        final CompiledModel model;
+        final int maxDelay;
+        final Worker[] workers;
+        // Open states plus states being expanded; the search is over when it drops to 0.
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicReference<Incumbent> incumbent =
+            new AtomicReference<>(new Incumbent(Double.NEGATIVE_INFINITY, null));
+        final IncumbentListener listener;
+        final SearchBudget.Meter meter;
+        // Flight recorder events are only created if it runs; their label is built once.
+        final boolean recording = SearchEvents.recording();
+        final String strategyName = getName();
+        // Serializes reports; only touched under the lock.
+        private double reportedScore = Double.NEGATIVE_INFINITY;
+        // Set when the listener asks to stop.
+        volatile boolean stopped;
+        // Elapsed time when the first and the current incumbent were found, -1 until then.
+        final AtomicLong firstFoundMs = new AtomicLong(-1);
+        volatile long bestFoundMs = -1;
         
-        SearchState bestSolution = null;
-        double bestScore = Double.NEGATIVE_INFINITY;
-        // int statesExplored = 0;
+        Search(CompiledModel model, int maxDelay, IncumbentListener listener, SearchBudget.Meter meter) {
+            this.model = model;
+            this.maxDelay = maxDelay;
+            this.listener = listener;
+            this.meter = meter;
+            this.workers = new Worker[threads];
+            // Split the transposition memory budget between the workers.
+            int tableBits = TRANSPOSITION_BITS - (31 - Integer.numberOfLeadingZeros(threads));
+            for (int i = 0; i < threads; i++) {
+                workers[i] = new Worker(this, i, tableBits);
+            }
+        }
+        
+        double bestScore() {
+            double own = incumbent.get().score();
+            return listener == null ? own : Math.max(own, listener.bestKnownScore());
+        }
         
-        while (!openSet.isEmpty()) {
-            // Check time limit
-            if (System.currentTimeMillis() - startTime > timeLimitMs) {
-                break;
+        /**
+         * Publishes a solution if it beats the incumbent.
+         */
+        void offer(double score, SearchState state) {
+            Incumbent current = incumbent.get();
+            while (score > current.score()) {
+                if (incumbent.compareAndSet(current, new Incumbent(score, state))) {
+                    long now = meter.elapsedMs();
+                    firstFoundMs.compareAndSet(-1, now);
+                    bestFoundMs = now;
+                    report(state);
+                    return;
+                }
+                current = incumbent.get();
             }
-            
-            SearchState current = openSet.poll();
-            // statesExplored++;
-
-            // Apply completions
-            int lastCompletionTime = current.currentTime;
-            while (!current.activeProcesses.isEmpty() && 
-                   current.activeProcesses.peek().time() <= current.currentTime) {
-                Event ev = current.activeProcesses.poll();
-                Process p = findProcess(processes, ev.processName());
-                if (p != null) {
-                    applyResults(current.stocks, p);
+        }
+        
+        /**
+         * Hands a new incumbent to the listener, unless a better one was already reported.
+         */
+        private void report(SearchState state) {
+            if (listener == null) return;
+            synchronized (this) {
+                if (stopped) return;
+                OptimizationResult result = toResult(model, state);
+                if (result.score() <= reportedScore) return;
+                reportedScore = result.score();
+                IncumbentListener.Incumbent found = new IncumbentListener.Incumbent(
+                    result, meter.elapsedMs(), statesExplored());
+                if (!listener.improved(found)) stopped = true;
+            }
+        }
+        
+        /**
+         * @return states expanded so far over all workers (approximate while they run)
+         */
+        long statesExplored() {
+            long explored = 0;
+            for (Worker w : workers) {
+                explored += w.statesExplored;
+            }
+            return explored;
+        }
+        
+        /**
+         * @return counters of the run, summed over the workers
+         */
+        OptimizationStats stats() {
+            long generated = 0, pruned = 0, deduplicated = 0, peak = 0, events = 0;
+            for (Worker w : workers) {
+                generated += w.statesGenerated;
+                pruned += w.prunedByBound;
+                deduplicated += w.deduplicated;
+                peak += w.peakFrontier;
+                events += w.eventsProcessed;
+            }
+            return new OptimizationStats(generated, statesExplored(), pruned, deduplicated, peak, events,
+                firstFoundMs.get(), bestFoundMs, meter.elapsedMs());
+        }
+        
+        void push(Worker owner, SearchState state) {
+            pending.incrementAndGet();
+            synchronized (owner.openSet) {
+                owner.openSet.add(state);
+                owner.peakFrontier = Math.max(owner.peakFrontier, owner.openSet.size());
+            }
+        }
+        
+        /**
+         * Takes the best state of the worker's own frontier, or steals the best
+         * state of another worker's frontier when its own is empty.
+         */
+        SearchState take(Worker worker) {
+            for (int k = 0; k < workers.length; k++) {
+                Worker victim = workers[(worker.id + k) % workers.length];
+                synchronized (victim.openSet) {
+                    SearchState state = victim.openSet.poll();
+                    if (state != null) return state;
+                }
+            }
+            return null;
+        }
+    }
+    
+    /**
+     * Search worker with its own frontier and transposition table.
+     */
+    private final class Worker implements Callable<Void> {
+        final Search search;
+        final int id;
+        // Priority queue for A* search
+        final PriorityQueue<SearchState> openSet = new PriorityQueue<>();
+        final TranspositionTable seen;
+        final FlowBound flowBound;
+        final SearchBudget.Probe probe;
+        long statesExplored;
+        long statesGenerated;
+        long prunedByBound;
+        long deduplicated;
+        long eventsProcessed;
+        // Only updated by pushes of the owner, under the frontier lock.
+        int peakFrontier;
+        // Flight recorder event of the current expansion batch, and the counters when it began.
+        private SearchEvents.Expansion batch;
+        private final long[] batchStart = new long[4];
+        
+        Worker(Search search, int id, int tableBits) {
+            this.search = search;
+            this.id = id;
+            this.seen = new TranspositionTable(tableBits);
+            this.flowBound = new FlowBound(search.model);
+            this.probe = search.meter.probe();
+        }
+        
+        @Override
+        public Void call() {
+            if (search.recording) recordBatch();
+            while (true) {
+                // Check budget and early stop; idle workers must notice too, or they would wait forever
+                if (search.stopped || search.meter.exhausted()) {
+                    break;
+                }
+                
+                SearchState current = search.take(this);
+                if (current == null) {
+                    if (search.pending.get() == 0) break;
+                    // Other workers are still expanding and may publish new states.
+                    Thread.yield();
+                    continue;
+                }
+                statesExplored++;
+                try {
+                    expand(current);
+                } finally {
+                    search.pending.decrementAndGet();
+                }
+                if (search.recording && statesExplored % EVENT_BATCH == 0) recordBatch();
+                if (probe.tick()) break;
+            }
+            if (search.recording) recordBatch();
+            return null;
+        }
+        
+        /**
+         * Commits the flight recorder event of the expansions since the last
+         * batch, if enabled, and starts the next one.
+         */
+        private void recordBatch() {
+            if (batch != null && batch.shouldCommit()) {
+                batch.strategy = search.strategyName;
+                batch.expanded = statesExplored - batchStart[0];
+                batch.generated = statesGenerated - batchStart[1];
+                batch.prunedByBound = prunedByBound - batchStart[2];
+                batch.deduplicated = deduplicated - batchStart[3];
+                synchronized (openSet) {
+                    batch.frontier = openSet.size();
                 }
-                lastCompletionTime = Math.max(lastCompletionTime, ev.time());
+                batch.commit();
             }
+            batch = new SearchEvents.Expansion();
+            batchStart[0] = statesExplored;
+            batchStart[1] = statesGenerated;
+            batchStart[2] = prunedByBound;
+            batchStart[3] = deduplicated;
+            batch.begin();
+        }
+        
+        private void expand(SearchState current) {
+            CompiledModel model = search.model;
+            int maxDelay = search.maxDelay;
+            Simulation sim = current.sim;
+
+            // Apply completions
+            eventsProcessed += sim.completeUntil(sim.currentTime());
             
             // Update actual score
-            current.actualScore = calculateActualScore(current.stocks, optimize, current.currentTime, baseline);
+            current.actualScore = calculateActualScore(model, sim, sim.currentTime());
 
-            // Recompute bound from the normalized state before pruning.
-            current.remainingEstimate = estimateRemainingValue(
-                current.stocks,
-                current.currentTime,
-                processes,
-                optimize,
-                maxDelay,
-                baseline
-            );
+            // Recompute bound from the normalized state before pruning. Children inherit
+            // the flow bound, which stays valid for every descendant.
+            current.targetBound = Math.min(current.targetBound, flowBound.maxTargets(sim.projectedStocks()));
+            current.remainingEstimate = boundRemainingValue(current);
 
             // Prune if this state cannot beat best known solution.
-            if (current.f() < bestScore) {
-                continue;
+            if (current.f() < search.bestScore()) {
+                prunedByBound++;
+                return;
+            }
+            
+            // Same configuration reached through another start order: its future is identical.
+            if (!seen.visit(sim.stateHash(), current.actualScore)) {
+                deduplicated++;
+                return;
             }
             
             // Check if exceeded time limit
-            if (current.currentTime > maxDelay) {
-                if (current.actualScore > bestScore) {
-                    bestScore = current.actualScore;
-                    bestSolution = current;
-                }
-                continue;
+            if (sim.currentTime() > maxDelay) {
+                search.offer(current.actualScore, current);
+                return;
             }
             
             // Get runnable processes
-            List<Process> candidates = getRunnable(current.stocks, processes);
+            List<Integer> candidates = getRunnable(sim);
             
             if (candidates.isEmpty()) {
                 // Terminal state
-                if (current.activeProcesses.isEmpty()) {
-                    double finalScore = calculateActualScore(current.stocks, optimize, lastCompletionTime, baseline);
-                    if (finalScore > bestScore) {
-                        bestScore = finalScore;
-                        bestSolution = current.copy();
-                        bestSolution.currentTime = lastCompletionTime;
+                if (!sim.hasActive()) {
+                    double finalScore = calculateActualScore(model, sim, sim.currentTime());
+                    if (finalScore > search.bestScore()) {
+                        search.offer(finalScore, current.copy());
                     }
                 } else {
                     // Advance to next completion
                     SearchState advanced = current.copy();
-                    advanced.currentTime = advanced.activeProcesses.peek().time();
-                    advanced.remainingEstimate = estimateRemainingValue(
-                        advanced.stocks,
-                        advanced.currentTime,
-                        processes,
-                        optimize,
-                        maxDelay,
-                        baseline
-                    );
-                    if (advanced.f() >= bestScore) {
-                        openSet.add(advanced);
-                    }
+                    advanced.sim.advanceTo(sim.nextCompletionTime());
+                    advanced.remainingEstimate = boundRemainingValue(advanced);
+                    statesGenerated++;
+                    pushOrPrune(advanced);
                 }
             } else {
                 // Expand state by trying each candidate
-                for (Process p : candidates) {
+                for (int p : candidates) {
                     SearchState newState = current.copy();
-                    consumeResources(newState.stocks, p);
-                    newState.trace.add(newState.currentTime + ":" + p.name());
-                    newState.activeProcesses.add(new Event(newState.currentTime + p.delay(), p.name()));
+                    newState.sim.start(p);
+                    newState.trace = TraceNode.append(newState.trace, sim.currentTime(), p);
                     
-                    newState.actualScore = calculateActualScore(newState.stocks, optimize, newState.currentTime, baseline);
-                    newState.remainingEstimate = estimateRemainingValue(
-                        newState.stocks,
-                        newState.currentTime,
-                        processes,
-                        optimize,
-                        maxDelay,
-                        baseline
-                    );
+                    newState.actualScore = calculateActualScore(model, newState.sim, sim.currentTime());
+                    newState.remainingEstimate = boundRemainingValue(newState);
                     
-                    // Only add if this could potentially beat best
-                    if (newState.f() >= bestScore) {
-                        openSet.add(newState);
-                    }
+                    statesGenerated++;
+                    pushOrPrune(newState);
                 }
             }
         }
         
-        // Complete remaining processes in best solution
-        if (bestSolution != null) {
-            int finalTime = bestSolution.currentTime;
-            while (!bestSolution.activeProcesses.isEmpty()) {
-                Event ev = bestSolution.activeProcesses.poll();
-                Process p = findProcess(processes, ev.processName());
-                if (p != null) {
-                    applyResults(bestSolution.stocks, p);
-                }
-                finalTime = Math.max(finalTime, ev.time());
+        /**
+         * Queues a successor, unless it could not potentially beat the best solution.
+         */
+        private void pushOrPrune(SearchState state) {
+            if (state.f() >= search.bestScore()) {
+                search.push(this, state);
+            } else {
+                prunedByBound++;
             }
-            
-            boolean finished = bestSolution.activeProcesses.isEmpty() && 
-                             getRunnable(bestSolution.stocks, processes).isEmpty();
-            double finalScore = calculateActualScore(bestSolution.stocks, optimize, finalTime, baseline);
-            
-            return new OptimizationResult(
-                List.copyOf(bestSolution.trace),
-                new LinkedHashMap<>(bestSolution.stocks),
-                finalTime,
-                finished,
-                finalScore
-            );
         }
-        
-        // Fallback to greedy only if absolutely nothing was found
-        OptimizationStrategy fallback = new GreedyOptimizer();
-        return fallback.optimize(config, maxDelay);
     }
     
     /**
-     * Optimistic estimate of value that can still be gained.
+     * Target value the state can still gain, from its resource-flow bound.
      */
-    private double estimateRemainingValue(Map<String, Integer> stocks, int currentTime,
-                                         List<Process> processes, Set<String> optimize, int maxDelay,
-                                         Map<String, Integer> baseline) {
-        int remainingTime = maxDelay - currentTime;
-        if (remainingTime <= 0) return 0;
-        
-        // Find the best value per time unit from all processes
-        double bestRatePerTime = 0;
-        for (Process p : processes) {
-            if (p.delay() == 0) continue;
-            double value = 0;
-            for (var e : p.results().entrySet()) {
-                if (optimize.contains(e.getKey())) {
-                    int base = baseline.getOrDefault(e.getKey(), 0);
-                    value += Math.max(0, e.getValue() - base) * 1000.0;
-                }
-            }
-            double rate = value / p.delay();
-            bestRatePerTime = Math.max(bestRatePerTime, rate);
-        }
-        
-        // Optimistic assumption: we can achieve best rate continuously
-        return bestRatePerTime * remainingTime;
+    private double boundRemainingValue(SearchState state) {
+        return Math.max(0, (state.targetBound - state.sim.targetTotal()) * 1000.0);
     }
     
-    private double calculateActualScore(Map<String, Integer> stocks, Set<String> optimize, int currentTime,
-                                       Map<String, Integer> baseline) {
-        double score = 0;
-        for (var e : stocks.entrySet()) {
-            if (optimize.contains(e.getKey())) {
-                int base = baseline.getOrDefault(e.getKey(), 0);
-                score += (e.getValue() - base) * 1000.0;
-            }
-        }
-        if (optimize.contains("time")) {
+    private double calculateActualScore(CompiledModel model, Simulation sim, int currentTime) {
+        double score = sim.targetTotal() * 1000.0;
+        if (model.optimizesTime()) {
             score -= currentTime * 10.0;
         }
         return score;
     }
     
-    private Process findProcess(List<Process> processes, String name) {
-        return processes.stream().filter(p -> p.name().equals(name)).findFirst().orElse(null);
-    }
-    
-    private List<Process> getRunnable(Map<String, Integer> stocks, List<Process> processes) {
-        return processes.stream().filter(p -> isRunnable(stocks, p)).toList();
-    }
-    
-    private boolean isRunnable(Map<String, Integer> stocks, Process p) {
-        for (var need : p.needs().entrySet()) {
-            if (stocks.getOrDefault(need.getKey(), 0) < need.getValue()) return false;
+    private List<Integer> getRunnable(Simulation sim) {
+        List<Integer> runnable = new ArrayList<>();
+        for (int p = sim.nextRunnable(0); p >= 0; p = sim.nextRunnable(p + 1)) {
+            runnable.add(p);
         }
-        return true;
-    }
-    
-    private void consumeResources(Map<String, Integer> stocks, Process p) {
-        p.needs().forEach((k, v) -> stocks.merge(k, -v, Integer::sum));
-    }
-    
-    private void applyResults(Map<String, Integer> stocks, Process p) {
-        p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
+        return runnable;
     }
 }
-
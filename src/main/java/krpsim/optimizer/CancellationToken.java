@@ -0,0 +1,42 @@
+package krpsim.optimizer;
+
+/**
+ * Cooperative cancellation flag shared between a search and the threads
+ * that may want to stop it.
+ *
+ * Any thread can call {@link #cancel()}; searches poll {@link #isCancelled()}
+ * between steps and return their best solution so far. A child token is
+ * cancelled with its parent but can also be cancelled on its own, which lets
+ * a composite strategy stop its members without touching the caller's token.
+ */
+public final class CancellationToken {
+
+    private final CancellationToken parent;
+    private volatile boolean cancelled;
+
+    public CancellationToken() {
+        this(null);
+    }
+
+    private CancellationToken(CancellationToken parent) {
+        this.parent = parent;
+    }
+
+    /**
+     * @return new token cancelled whenever this one is
+     */
+    public CancellationToken child() {
+        return new CancellationToken(this);
+    }
+
+    /**
+     * Asks every search polling this token (or a child of it) to stop.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled || (parent != null && parent.isCancelled());
+    }
+}
@@ -0,0 +1,223 @@
+package krpsim.optimizer;
+
+import java.util.Arrays;
+
+import krpsim.model.CompiledModel;
+import krpsim.model.Simulation;
+import krpsim.trace.TraceSink;
+
+/**
+ * Detects when the greedy schedule has become periodic and skips whole periods.
+ *
+ * The greedy decision at a tick only depends on the stocks and on the active
+ * events relative to the clock. The detector works in three steps:
+ *
+ * 1. Search: Brent-style snapshots of a decision point are taken after 1, 2, 4, ...
+ *    decisions. A later decision point with the same {@link Simulation#decisionKey()},
+ *    relative event layout and clipped stocks is a candidate: the time between
+ *    the two is a period P, and the stock difference a per-period delta.
+ *    Clipping lets resources that pile up past every need drift between periods.
+ * 2. Confirmation: the next period is simulated while every start decision is
+ *    checked against that delta. A start stays possible while the needed stocks
+ *    that shrink keep enough slack. A refusal stays a refusal while one of the
+ *    missing needs does not grow past its threshold. This bounds how many more
+ *    periods repeat the same decisions.
+ * 3. Jump: if the period ends on the same layout with the same delta, the
+ *    simulation moves ahead by as many whole periods as those bounds and
+ *    {@code maxDelay} allow, in closed form. The skipped starts are handed to
+ *    the trace sink as one repeated block, so the trace stays exact.
+ */
+final class CycleDetector {
+
+    // Stocks are kept below this after a jump so in-period peaks cannot overflow.
+    private static final int STOCK_LIMIT = Integer.MAX_VALUE / 2;
+
+    private final CompiledModel model;
+    // Whether the greedy starts as many instances as the stocks allow.
+    private final boolean batchStarts;
+
+    // Search
+    private int power = 1;
+    private int steps;
+    private int snapTime = -1;
+    private long snapKey;
+    private long[] snapLayout;
+    private int[] snapStocks;
+
+    // Confirmation
+    private boolean confirming;
+    private int anchorTime;
+    private long[] anchorLayout;
+    private int[] anchorStocks;
+    private int[] delta;
+    private int period;
+    // Offset of the last decision point inside the period.
+    private int lastOffset;
+    // Number of further periods for which every decision stays the same.
+    private long maxRepeats;
+    private int[] startOffsets = new int[16];
+    private int[] startProcesses = new int[16];
+    private int[] startCounts = new int[16];
+    private int startCount;
+
+    CycleDetector(CompiledModel model, boolean batchStarts) {
+        this.model = model;
+        this.batchStarts = batchStarts;
+    }
+
+    /**
+     * @return true while a candidate period is being confirmed; the caller must
+     *         then submit every relevant process to {@link #admit} in start order
+     *         (single starts) and report each start to {@link #started}
+     */
+    boolean confirming() {
+        return confirming;
+    }
+
+    /**
+     * Called at each decision point, after completions and before starts.
+     *
+     * @return true if the simulation was moved ahead (the clock has changed)
+     */
+    boolean atDecisionPoint(Simulation sim, int maxDelay, TraceSink sink) {
+        int now = sim.currentTime();
+        steps++;
+        if (confirming) {
+            if (now < anchorTime + period) {
+                lastOffset = now - anchorTime;
+                return false;
+            }
+            confirming = false;
+            boolean jumped = now == anchorTime + period && repeatsAnchor(sim) && skip(sim, maxDelay, sink);
+            // After a jump the period is likely to hold again, so the search keeps its power.
+            if (!jumped) power = 1;
+            snapshot(sim);
+            return jumped;
+        }
+
+        if (now > snapTime && sim.decisionKey() == snapKey) {
+            long[] layout = sim.activeLayout();
+            if (Arrays.equals(layout, snapLayout) && sameClippedStocks(sim)) {
+                beginConfirmation(sim, layout);
+                return false;
+            }
+        }
+        if (steps >= power) {
+            snapshot(sim);
+            power <<= 1;
+        }
+        return false;
+    }
+
+    /**
+     * Decides one start during confirmation and bounds how long the decision holds.
+     *
+     * @return true if the process can start now
+     */
+    boolean admit(Simulation sim, int process) {
+        int[] ids = model.needIds(process);
+        int[] qty = model.needQuantities(process);
+        boolean canStart = sim.canStart(process);
+        if (canStart) {
+            // Still startable while every shrinking need keeps its slack.
+            for (int i = 0; i < ids.length; i++) {
+                int d = delta[ids[i]];
+                if (d < 0) maxRepeats = Math.min(maxRepeats, (sim.stock(ids[i]) - qty[i]) / -d);
+            }
+        } else {
+            // Still refused while at least one missing need stays short.
+            long holds = 0;
+            for (int i = 0; i < ids.length; i++) {
+                int stock = sim.stock(ids[i]);
+                if (stock >= qty[i]) continue;
+                int d = delta[ids[i]];
+                holds = Math.max(holds, d <= 0 ? Long.MAX_VALUE : (qty[i] - stock - 1) / d);
+            }
+            maxRepeats = Math.min(maxRepeats, holds);
+        }
+        return canStart;
+    }
+
+    /**
+     * Records a start made during confirmation, for the trace of skipped periods.
+     */
+    void started(int time, int process, int count) {
+        if (startCount == startOffsets.length) {
+            startOffsets = Arrays.copyOf(startOffsets, startCount * 2);
+            startProcesses = Arrays.copyOf(startProcesses, startCount * 2);
+            startCounts = Arrays.copyOf(startCounts, startCount * 2);
+        }
+        startOffsets[startCount] = time - anchorTime;
+        startProcesses[startCount] = process;
+        startCounts[startCount] = count;
+        startCount++;
+    }
+
+    private void snapshot(Simulation sim) {
+        snapTime = sim.currentTime();
+        snapKey = sim.decisionKey();
+        snapLayout = sim.activeLayout();
+        snapStocks = sim.stocks();
+        steps = 0;
+    }
+
+    private boolean sameClippedStocks(Simulation sim) {
+        for (int r = 0; r < snapStocks.length; r++) {
+            int cap = model.maxNeed(r);
+            if (Math.min(sim.stock(r), cap) != Math.min(snapStocks[r], cap)) return false;
+        }
+        return true;
+    }
+
+    private void beginConfirmation(Simulation sim, long[] layout) {
+        confirming = true;
+        anchorTime = sim.currentTime();
+        anchorLayout = layout;
+        anchorStocks = sim.stocks();
+        delta = new int[anchorStocks.length];
+        for (int r = 0; r < delta.length; r++) delta[r] = anchorStocks[r] - snapStocks[r];
+        period = anchorTime - snapTime;
+        lastOffset = 0;
+        maxRepeats = Long.MAX_VALUE;
+        if (batchStarts) {
+            // Batch sizes follow the exact stocks, so only a schedule whose needed stocks
+            // come back unchanged is known to repeat.
+            for (int r = 0; r < delta.length; r++) {
+                if (delta[r] != 0 && model.maxNeed(r) > 0) maxRepeats = 0;
+            }
+        }
+        startCount = 0;
+    }
+
+    /**
+     * @return true if the simulation is back at the anchor layout, with stocks moved by delta
+     */
+    private boolean repeatsAnchor(Simulation sim) {
+        if (!Arrays.equals(sim.activeLayout(), anchorLayout)) return false;
+        for (int r = 0; r < delta.length; r++) {
+            if (sim.stock(r) != anchorStocks[r] + delta[r]) return false;
+        }
+        return true;
+    }
+
+    private boolean skip(Simulation sim, int maxDelay, TraceSink sink) {
+        int now = sim.currentTime();
+        // Every decision point of a skipped period must lie within maxDelay.
+        long horizon = (long) maxDelay - now - lastOffset;
+        if (horizon < 0) return false;
+        long repeats = Math.min(maxRepeats, horizon / period + 1);
+        for (int r = 0; r < delta.length; r++) {
+            if (delta[r] > 0) repeats = Math.min(repeats, Math.max(0, STOCK_LIMIT - sim.stock(r)) / delta[r]);
+        }
+        if (repeats <= 0) return false;
+
+        int[] times = new int[startCount];
+        for (int i = 0; i < startCount; i++) times[i] = now + startOffsets[i];
+        sink.acceptRepeated(times, startProcesses, startCounts, startCount, period, repeats);
+
+        int[] shift = new int[delta.length];
+        for (int r = 0; r < delta.length; r++) shift[r] = (int) (delta[r] * repeats);
+        sim.fastForward(shift, (int) (repeats * period));
+        return true;
+    }
+}
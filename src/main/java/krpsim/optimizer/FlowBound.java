@@ -0,0 +1,189 @@
+package krpsim.optimizer;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import krpsim.model.CompiledModel;
+
+/**
+ * Upper bound on the target stock reachable from a state, from a linear
+ * relaxation of the resource flows.
+ *
+ * Let x_p be how many more times process p starts. Every resource must stay
+ * non-negative once all those runs complete:
+ *
+ *   available[r] + sum_p x_p * (result[p][r] - need[p][r]) >= 0
+ *
+ * and the final target total is the available target total plus
+ * sum_p x_p * (net target yield of p). Maximizing it over real x >= 0 with a
+ * small dense simplex gives an admissible bound; any real schedule is an
+ * integer point of that polytope. The result is infinite when the relaxation
+ * is unbounded (a cycle that creates resources from nothing).
+ *
+ * Bounds are memoized per available-stock vector in a small LRU cache. The
+ * instance is not thread-safe; each search worker owns one.
+ */
+final class FlowBound {
+
+    private static final double EPS = 1e-9;
+    private static final int CACHE_SIZE = 4096;
+
+    // Rows of the relaxation: only resources that some process can drain.
+    private final int[] rowResources;
+    // consumption[i][p] = need - result of row resource i for process p
+    private final double[][] consumption;
+    // yield[p] = net target production of process p
+    private final double[] yield;
+    private final boolean[] target;
+    private final boolean noYield;
+
+    private final Map<Key, Double> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    private record Key(int[] stocks) {
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && Arrays.equals(stocks, k.stocks);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(stocks);
+        }
+    }
+
+    FlowBound(CompiledModel model) {
+        int n = model.processCount();
+        int m = model.resourceCount();
+        double[][] net = new double[m][n];
+        yield = new double[n];
+        target = new boolean[m];
+        for (int r = 0; r < m; r++) target[r] = model.isTarget(r);
+
+        boolean anyYield = false;
+        for (int p = 0; p < n; p++) {
+            int[] ids = model.needIds(p);
+            int[] qty = model.needQuantities(p);
+            for (int i = 0; i < ids.length; i++) net[ids[i]][p] -= qty[i];
+            ids = model.resultIds(p);
+            qty = model.resultQuantities(p);
+            for (int i = 0; i < ids.length; i++) net[ids[i]][p] += qty[i];
+        }
+        for (int r = 0; r < m; r++) {
+            if (!target[r]) continue;
+            for (int p = 0; p < n; p++) yield[p] += net[r][p];
+        }
+        for (int p = 0; p < n; p++) anyYield |= yield[p] > 0;
+        noYield = !anyYield;
+
+        int rows = 0;
+        int[] keep = new int[m];
+        for (int r = 0; r < m; r++) {
+            for (int p = 0; p < n; p++) {
+                if (net[r][p] < 0) {
+                    keep[rows++] = r;
+                    break;
+                }
+            }
+        }
+        rowResources = Arrays.copyOf(keep, rows);
+        consumption = new double[rows][n];
+        for (int i = 0; i < rows; i++) {
+            for (int p = 0; p < n; p++) consumption[i][p] = -net[rowResources[i]][p];
+        }
+    }
+
+    /**
+     * @param available stock of every resource once all running processes complete
+     * @return maximal final target total, or {@code Double.POSITIVE_INFINITY}
+     */
+    double maxTargets(int[] available) {
+        long base = 0;
+        for (int r = 0; r < available.length; r++) {
+            if (target[r]) base += available[r];
+        }
+        // No process increases the targets: the best plan is to stop here.
+        if (noYield) return base;
+
+        Key key = new Key(available);
+        Double gain = cache.get(key);
+        if (gain == null) {
+            gain = solve(available);
+            cache.put(key, gain);
+        }
+        return base + gain;
+    }
+
+    /**
+     * Maximizes yield . x subject to consumption x <= available (rows), x >= 0.
+     * The origin is feasible since stocks are non-negative, so no phase 1 is needed.
+     * Bland's rule keeps degenerate pivots from cycling.
+     */
+    private double solve(int[] available) {
+        int m = rowResources.length;
+        int n = yield.length;
+        int cols = n + m;
+        // Tableau rows 0..m-1 are constraints, row m is the objective; last column is the rhs.
+        double[][] t = new double[m + 1][cols + 1];
+        int[] basis = new int[m];
+        for (int i = 0; i < m; i++) {
+            System.arraycopy(consumption[i], 0, t[i], 0, n);
+            t[i][n + i] = 1;
+            t[i][cols] = Math.max(0, available[rowResources[i]]);
+            basis[i] = n + i;
+        }
+        for (int p = 0; p < n; p++) t[m][p] = -yield[p];
+
+        int maxPivots = 50 * (cols + 1);
+        for (int iter = 0; iter < maxPivots; iter++) {
+            int enter = -1;
+            for (int j = 0; j < cols; j++) {
+                if (t[m][j] < -EPS) {
+                    enter = j;
+                    break;
+                }
+            }
+            if (enter < 0) {
+                // Integer schedules cannot exceed the floor of the real optimum.
+                return Math.floor(t[m][cols] + 1e-6);
+            }
+
+            int leave = -1;
+            double best = Double.POSITIVE_INFINITY;
+            for (int i = 0; i < m; i++) {
+                if (t[i][enter] > EPS) {
+                    double ratio = t[i][cols] / t[i][enter];
+                    if (ratio < best - EPS || (ratio < best + EPS && leave >= 0 && basis[i] < basis[leave])) {
+                        best = ratio;
+                        leave = i;
+                    }
+                }
+            }
+            if (leave < 0) return Double.POSITIVE_INFINITY;
+
+            pivot(t, leave, enter);
+            basis[leave] = enter;
+        }
+        // Did not converge: stay admissible.
+        return Double.POSITIVE_INFINITY;
+    }
+
+    private static void pivot(double[][] t, int row, int col) {
+        double[] pr = t[row];
+        double inv = 1.0 / pr[col];
+        for (int j = 0; j < pr.length; j++) pr[j] *= inv;
+        for (int i = 0; i < t.length; i++) {
+            if (i == row) continue;
+            double f = t[i][col];
+            if (Math.abs(f) < EPS) continue;
+            double[] ri = t[i];
+            for (int j = 0; j < ri.length; j++) ri[j] -= f * pr[j];
+        }
+    }
+}
@@ -1,19 +1,14 @@
 package krpsim.optimizer;
 
-import krpsim.model.Event;
-import krpsim.model.Process;
-import krpsim.utils.Parser;
+import krpsim.model.CompiledModel;
+import krpsim.model.Simulation;
+import krpsim.trace.TraceBuffer;
+import krpsim.trace.TraceSink;
 
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
-import java.util.Set;
-import java.util.stream.Collectors;
 
 /**
  * Greedy optimization strategy.
@@ -23,233 +18,325 @@ import java.util.stream.Collectors;
  * 1. Have sufficient resources available
  * 2. Produce the highest value according to optimization targets
  * 
- * Time complexity: O(T * P^2) where T is time and P is number of processes
+ * With batched starts, runnable processes keep taking turns within a tick
+ * until the stocks run out, instead of starting once per tick; each process
+ * then needs a single start with one aggregated completion event.
+ * 
+ * Periodic steady states are detected and skipped in closed form (see {@link CycleDetector}),
+ * so long horizons cost time proportional to the transient, not to maxDelay.
+ * 
+ * A {@link SearchBudget} counts decision points as nodes; when it runs out the
+ * schedule stops at the current tick, and the partial schedule is still valid.
+ * Its single solution is found at the end, so the time to the first and best
+ * solution in its {@link OptimizationStats} is the whole run.
+ * 
+ * Time complexity: O(T * (R log R + C)) where T is the number of decision points,
+ * R the number of runnable processes and C the consumers touched by stock changes
  * Quality: Good for most cases, but may miss global optimum
  */
 public class GreedyOptimizer implements OptimizationStrategy {
     
+    private final boolean batchStarts;
+    private final SearchBudget budget;
+    
+    public GreedyOptimizer() {
+        this(false);
+    }
+    
+    /**
+     * @param batchStarts start every runnable process as many times as the stocks allow
+     */
+    public GreedyOptimizer(boolean batchStarts) {
+        this(batchStarts, SearchBudget.unlimited());
+    }
+    
+    /**
+     * @param batchStarts start every runnable process as many times as the stocks allow
+     * @param budget limits of each run
+     */
+    public GreedyOptimizer(boolean batchStarts, SearchBudget budget) {
+        this.batchStarts = batchStarts;
+        this.budget = budget;
+    }
+    
     @Override
     public String getName() {
-        return "Greedy (Fast)";
+        return batchStarts ? "Greedy (Fast, batched starts)" : "Greedy (Fast)";
     }
     
     @Override
-    public OptimizationResult optimize(Parser.Config config, int maxDelay) {
-        Map<String, Integer> stocks = new LinkedHashMap<>(config.initialStocks());
-        List<Process> processes = config.processes();
-        Set<String> optimize = config.optimizeTargets();
-        
-        // Build dependency graph: which processes are relevant for optimization targets
-        Set<Process> relevantProcesses = buildRelevantProcessGraph(processes, optimize);
-        
+    public OptimizationResult optimize(CompiledModel model, int maxDelay) {
+        TraceBuffer trace = new TraceBuffer(model::processName);
+        return run(model, maxDelay, trace, trace, budget.start());
+    }
+    
+    /**
+     * Reports the single result at the end.
+     */
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        SearchBudget.Meter meter = budget.start();
+        TraceBuffer trace = new TraceBuffer(model::processName);
+        OptimizationResult result = run(model, maxDelay, trace, trace, meter);
+        listener.improved(new IncumbentListener.Incumbent(result, meter.elapsedMs(), 0));
+        return result;
+    }
+    
+    /**
+     * Streams each start to the sink as soon as it is decided, so the trace
+     * is never held in memory.
+     */
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay, TraceSink sink) {
+        return run(model, maxDelay, sink, List.of(), budget.start());
+    }
+    
+    /**
+     * @param sink receives every start
+     * @param trace trace reported in the result
+     * @param meter budget of the run, charged one node per decision point
+     */
+    private OptimizationResult run(CompiledModel model, int maxDelay, TraceSink sink, List<String> trace,
+                                   SearchBudget.Meter meter) {
         // Active events are ordered by completion time; the earliest completion is processed first.
-        PriorityQueue<Event> active = new PriorityQueue<>();
-        // Trace keeps the start time and process name for reporting.
-        List<String> trace = new ArrayList<>();
-        int currentTime = 0;
-        boolean reachedDelay = false;
-        int lastCompletionTime = -1;
+        Simulation sim = new Simulation(model);
+        boolean[] started = new boolean[model.processCount()];
+        
+        // Relevance and priority only depend on the model, so the start order is fixed up front.
+        int[] order = buildStartOrder(model);
+        int[] rank = new int[model.processCount()];
+        Arrays.fill(rank, -1);
+        for (int i = 0; i < order.length; i++) rank[order[i]] = i;
+        int[] candidates = new int[order.length];
+        int[] instances = new int[model.processCount()];
+        CycleDetector cycles = new CycleDetector(model, batchStarts);
+        SearchBudget.Probe probe = meter.probe();
+        long decisions = 0;
+        long events = 0;
         
         while (true) {
+            int currentTime = sim.currentTime();
             // Apply all completions at currentTime and update stocks.
-            while (!active.isEmpty() && active.peek().time() <= currentTime) {
-                Event ev = active.poll();
-                Process p = findProcess(processes, ev.processName());
-                if (p != null) {
-                    applyResults(stocks, p);
-                }
-                lastCompletionTime = Math.max(lastCompletionTime, ev.time());
-            }
-            
-            // Try to start processes at current time.
-            boolean startedAny = false;
+            events += sim.completeUntil(currentTime);
             
             if (currentTime > maxDelay) {
-                reachedDelay = true;
+                break;
+            }
+            decisions++;
+            if (probe.tick()) {
                 break;
             }
             
-            // Collect all processes that are runnable with current stocks.
-            List<Process> candidates = getRunnable(stocks, processes);
-            
-            // Filter only relevant processes that lead to optimization targets.
-            if (!optimize.contains("time") || optimize.size() > 1) {
-                // If we have specific resource targets (not just "time"), filter candidates
-                candidates = candidates.stream()
-                    .filter(relevantProcesses::contains)
-                    .toList();
+            // Once the schedule is periodic, whole periods are skipped in one step.
+            if (cycles.atDecisionPoint(sim, maxDelay, sink)) {
+                continue;
             }
             
-            if (!candidates.isEmpty()) {
-                // Prefer processes that produce more of the optimization targets.
-                Comparator<Process> priority = Comparator.comparingInt(p -> {
-                    int score = 0;
-                    for (var e : p.results().entrySet()) {
-                        if (optimize.contains(e.getKey())) score -= e.getValue();
+            if (batchStarts) {
+                startBatched(sim, model, order, instances, sink, started, cycles);
+            } else if (cycles.confirming()) {
+                // Visit every relevant process so the detector can bound how long each decision holds.
+                for (int p : order) {
+                    if (cycles.admit(sim, p) && sim.fittingInstances(p) > 0) {
+                        sim.start(p);
+                        started[p] = true;
+                        sink.accept(currentTime, p);
+                        cycles.started(currentTime, p, 1);
                     }
-                    return score;
-                });
-                
-                List<Process> ordered;
-                // If time is a target, do not re-order by resources; keep input order.
-                if (optimize.contains("time")) {
-                    ordered = new ArrayList<>(candidates);
-                } else if (!Collections.disjoint(optimize, extractAllResultKeys(processes))) {
-                    // Stable tie-breaker keeps deterministic output when scores match.
-                    ordered = candidates.stream()
-                        .sorted(priority.thenComparing(p -> processes.indexOf(p)))
-                        .collect(Collectors.toList());
-                } else {
-                    // No overlap with optimization resources; keep runnable order.
-                    ordered = new ArrayList<>(candidates);
                 }
-
+            } else {
+                // Collect relevant runnable processes from the incrementally tracked set,
+                // as positions in the start order.
+                int count = 0;
+                for (int p = sim.nextRunnable(0); p >= 0; p = sim.nextRunnable(p + 1)) {
+                    if (rank[p] >= 0) candidates[count++] = rank[p];
+                }
+                Arrays.sort(candidates, 0, count);
+            
                 // Start each runnable process once per tick to avoid
                 // a runaway loop of identical starts in the same time unit.
-                for (Process p : ordered) {
-                    if (isRunnable(stocks, p)) {
-                        if (currentTime > maxDelay) {
-                            reachedDelay = true;
-                            break;
-                        }
+                for (int i = 0; i < count; i++) {
+                    int p = order[candidates[i]];
+                    // Earlier starts this tick may have consumed the inputs.
+                    if (sim.canStart(p) && sim.fittingInstances(p) > 0) {
                         // Consume inputs immediately and schedule a completion event.
-                        consumeResources(stocks, p);
-                        trace.add(currentTime + ":" + p.name());
-                        active.add(new Event(currentTime + p.delay(), p.name()));
-                        startedAny = true;
+                        sim.start(p);
+                        started[p] = true;
+                        sink.accept(currentTime, p);
                     }
                 }
-                if (reachedDelay) break;
-
-                if (startedAny) {
-                    // Move to the nearest completion to apply results as soon as possible.
-                    if (!active.isEmpty()) {
-                        currentTime = active.peek().time();
-                    } else {
-                        break;
-                    }
-                } else {
-                    // No process could start now; jump to next completion if any.
-                    if (active.isEmpty()) break;
-                    else currentTime = active.peek().time();
-                }
-            } else {
-                // No candidates; only wait for the next completion or end.
-                if (active.isEmpty()) break;
-                else currentTime = active.peek().time();
             }
+            
+            // Move to the nearest completion to apply results as soon as possible.
+            if (!sim.hasActive()) break;
+            sim.advanceTo(sim.nextCompletionTime());
         }
         
         // Complete remaining active processes after loop termination.
-        while (!active.isEmpty()) {
-            Event ev = active.poll();
-            Process p = findProcess(processes, ev.processName());
-            if (p != null) applyResults(stocks, p);
-            lastCompletionTime = Math.max(lastCompletionTime, ev.time());
-        }
+        events += sim.completeAll();
         
         // Resolve final time and compute score based on the requested objectives.
-        int finalTime = lastCompletionTime >= 0 ? lastCompletionTime : currentTime;
-        boolean finished = active.isEmpty() && getRunnable(stocks, processes).isEmpty();
-        double score = calculateScore(stocks, optimize, finalTime);
+        int finalTime = sim.lastCompletionTime() >= 0 ? sim.lastCompletionTime() : sim.currentTime();
+        boolean finished = !sim.hasRunnable();
+        double score = calculateScore(model, sim.stocks(), finalTime);
         
-        return new OptimizationResult(List.copyOf(trace), new LinkedHashMap<>(stocks), finalTime, finished, score);
+        long elapsed = meter.elapsedMs();
+        OptimizationStats stats = new OptimizationStats(0, decisions, 0, 0, 0, events, elapsed, elapsed, elapsed);
+        OptimizationResult result = new OptimizationResult(trace, model.toStockMap(sim.stocks(), started),
+            finalTime, finished, score, stats);
+        SearchEvents.finished(getName(), result);
+        return result;
     }
     
-    private Process findProcess(List<Process> processes, String name) {
-        // Linear search keeps behavior simple and preserves list order semantics.
-        return processes.stream().filter(p -> p.name().equals(name)).findFirst().orElse(null);
+    /**
+     * Batched starts for one tick. Runnable processes take turns in start order,
+     * one instance per turn, as the single-start loop does over successive ticks,
+     * until none can start. While every process of a pass can start, as many
+     * whole passes as the summed needs allow are taken in one step. Each process
+     * then gets a single start of all its instances, with one completion event.
+     * Starts whose results would push a stock past {@link Integer#MAX_VALUE}
+     * are not taken, so the stocks saturate instead of wrapping around.
+     */
+    private void startBatched(Simulation sim, CompiledModel model, int[] order, int[] instances,
+                              TraceSink sink, boolean[] started, CycleDetector cycles) {
+        int[] stocks = sim.stocks();
+        long[] room = new long[stocks.length];
+        for (int r = 0; r < room.length; r++) room[r] = sim.headroom(r);
+        long[] passNeeds = new long[stocks.length];
+        long[] passGains = new long[stocks.length];
+        int[] pass = new int[order.length];
+        int n = 0;
+        for (int p : order) {
+            if (!sim.canStart(p)) continue;
+            // A process needing nothing is not limited by stocks; it keeps its single start.
+            if (model.needIds(p).length > 0) pass[n++] = p;
+            else if (fits(model, room, p)) take(model, stocks, room, p, 1, instances);
+        }
+        while (n > 0) {
+            long passes = Long.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                int p = pass[i];
+                int[] ids = model.needIds(p);
+                int[] qty = model.needQuantities(p);
+                for (int j = 0; j < ids.length; j++) passNeeds[ids[j]] += qty[j];
+                ids = model.resultIds(p);
+                qty = model.resultQuantities(p);
+                for (int j = 0; j < ids.length; j++) passGains[ids[j]] += gain(model, p, ids[j], qty[j]);
+            }
+            for (int i = 0; i < n; i++) {
+                for (int r : model.needIds(pass[i])) {
+                    passes = Math.min(passes, stocks[r] / passNeeds[r]);
+                }
+                for (int r : model.resultIds(pass[i])) {
+                    if (passGains[r] > 0) passes = Math.min(passes, Math.max(0, room[r]) / passGains[r]);
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                for (int r : model.needIds(pass[i])) passNeeds[r] = 0;
+                for (int r : model.resultIds(pass[i])) passGains[r] = 0;
+            }
+            if (passes > 0) {
+                for (int i = 0; i < n; i++) take(model, stocks, room, pass[i], (int) passes, instances);
+                continue;
+            }
+            // Some need or some stock limit is short of a whole pass: one pass in
+            // turn order. A process that misses its turn drops out for the rest of
+            // the tick, and every such pass drops at least one process.
+            int live = 0;
+            for (int i = 0; i < n; i++) {
+                int p = pass[i];
+                if (!canCover(model, stocks, p) || !fits(model, room, p)) continue;
+                take(model, stocks, room, p, 1, instances);
+                pass[live++] = p;
+            }
+            n = live;
+        }
+        int now = sim.currentTime();
+        for (int p : order) {
+            int k = instances[p];
+            if (k == 0) continue;
+            instances[p] = 0;
+            sim.start(p, now, k);
+            started[p] = true;
+            sink.accept(now, p, k);
+            if (cycles.confirming()) cycles.started(now, p, k);
+        }
     }
-    
-    private List<Process> getRunnable(Map<String, Integer> stocks, List<Process> processes) {
-        // Runnable means all required inputs are available in current stocks.
-        return processes.stream().filter(p -> isRunnable(stocks, p)).toList();
+
+    private static void take(CompiledModel model, int[] stocks, long[] room, int process, int count,
+                             int[] instances) {
+        int[] ids = model.needIds(process);
+        int[] qty = model.needQuantities(process);
+        for (int j = 0; j < ids.length; j++) stocks[ids[j]] -= count * qty[j];
+        ids = model.resultIds(process);
+        qty = model.resultQuantities(process);
+        for (int j = 0; j < ids.length; j++) room[ids[j]] -= (long) count * gain(model, process, ids[j], qty[j]);
+        instances[process] += count;
     }
-    
-    private boolean isRunnable(Map<String, Integer> stocks, Process p) {
-        // Verify every required resource has enough quantity.
-        for (var need : p.needs().entrySet()) {
-            if (stocks.getOrDefault(need.getKey(), 0) < need.getValue()) return false;
+
+    /**
+     * @return true if one more instance keeps every stock it grows within its room
+     */
+    private static boolean fits(CompiledModel model, long[] room, int process) {
+        int[] ids = model.resultIds(process);
+        int[] qty = model.resultQuantities(process);
+        for (int j = 0; j < ids.length; j++) {
+            if (gain(model, process, ids[j], qty[j]) > room[ids[j]]) return false;
         }
         return true;
     }
-    
-    private void consumeResources(Map<String, Integer> stocks, Process p) {
-        // Remove required resources at process start.
-        p.needs().forEach((k, v) -> stocks.merge(k, -v, Integer::sum));
+
+    /**
+     * Growth of a result stock per instance. Shrinking stocks give no room back:
+     * the trace lists a tick's starts in start order, not in turn order, and
+     * each start must fit when replayed on its own.
+     */
+    private static int gain(CompiledModel model, int process, int resource, int produced) {
+        return Math.max(0, produced - model.needQuantity(process, resource));
     }
-    
-    private void applyResults(Map<String, Integer> stocks, Process p) {
-        // Add produced resources when the process finishes.
-        p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
+
+    private static boolean canCover(CompiledModel model, int[] stocks, int process) {
+        int[] ids = model.needIds(process);
+        int[] qty = model.needQuantities(process);
+        for (int j = 0; j < ids.length; j++) {
+            if (stocks[ids[j]] < qty[j]) return false;
+        }
+        return true;
     }
-    
-    private Set<String> extractAllResultKeys(List<Process> processes) {
-        Set<String> s = new HashSet<>();
-        // Collect all result resource names to detect overlap with optimization targets.
-        for (var p : processes) s.addAll(p.results().keySet());
-        return s;
+
+    /**
+     * Builds the order in which runnable processes are started at each tick.
+     * Only processes relevant to the optimization targets are included.
+     * When resource targets are produced by some process, processes yielding more
+     * of them come first; otherwise (or when time is a target) input order is kept.
+     */
+    private int[] buildStartOrder(CompiledModel model) {
+        List<Integer> ordered = new ArrayList<>();
+        boolean producesTarget = false;
+        for (int p = 0; p < model.processCount(); p++) {
+            if (model.isRelevant(p)) ordered.add(p);
+            for (int r : model.resultIds(p)) {
+                if (model.isTarget(r)) producesTarget = true;
+            }
+        }
+        if (!model.optimizesTime() && producesTarget) {
+            // Stable sort keeps input order as the tie-breaker for deterministic output.
+            ordered.sort(Comparator.comparingInt(p -> -model.targetYield(p)));
+        }
+        return ordered.stream().mapToInt(Integer::intValue).toArray();
     }
     
-    private double calculateScore(Map<String, Integer> stocks, Set<String> optimize, int finalTime) {
+    private double calculateScore(CompiledModel model, int[] stocks, int finalTime) {
         // Higher resource totals increase score; shorter time reduces penalty.
         double score = 0;
-        for (var e : stocks.entrySet()) {
-            if (optimize.contains(e.getKey())) {
-                score += e.getValue() * 1000.0;
+        for (int r = 0; r < stocks.length; r++) {
+            if (model.isTarget(r)) {
+                score += stocks[r] * 1000.0;
             }
         }
-        if (optimize.contains("time")) {
+        if (model.optimizesTime()) {
             score -= finalTime * 10.0;
         }
         return score;
     }
-    
-    /**
-     * Builds a set of processes that are relevant for achieving optimization targets.
-     * Uses backward dependency analysis: starts from target resources and includes
-     * all processes that directly or indirectly produce them.
-     * 
-     * @param processes all available processes
-     * @param optimize optimization targets (resources or "time")
-     * @return set of processes that contribute to optimization targets
-     */
-    private Set<Process> buildRelevantProcessGraph(List<Process> processes, Set<String> optimize) {
-        Set<Process> relevant = new HashSet<>();
-        Set<String> neededResources = new HashSet<>();
-        
-        // Special case: if "time" is the only target, ALL processes are relevant
-        if (optimize.contains("time") && optimize.size() == 1) {
-            return new HashSet<>(processes);
-        }
-        
-        // Start with non-"time" optimization targets
-        for (String target : optimize) {
-            if (!target.equals("time")) {
-                neededResources.add(target);
-            }
-        }
-        
-        // Iteratively add processes that produce needed resources
-        boolean changed = true;
-        while (changed) {
-            changed = false;
-            for (Process p : processes) {
-                if (relevant.contains(p)) continue;
-                
-                // Check if this process produces any needed resource
-                boolean producesNeeded = p.results().keySet().stream()
-                    .anyMatch(neededResources::contains);
-                
-                if (producesNeeded) {
-                    relevant.add(p);
-                    // Add this process's needs to the needed resources
-                    neededResources.addAll(p.needs().keySet());
-                    changed = true;
-                }
-            }
-        }
-        
-        return relevant;
-    }
 }
@@ -0,0 +1,46 @@
+package krpsim.optimizer;
+
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+
+/**
+ * Receives the improving solutions of an anytime optimization run.
+ *
+ * Search strategies call it as soon as they find a solution better than every
+ * earlier one, so a caller can persist the current best and stop the run once
+ * it is good enough. Calls are serialized, even with several search threads,
+ * and each reported solution improves on the previous one by the strategy's
+ * own search score.
+ */
+@FunctionalInterface
+public interface IncumbentListener {
+
+    /**
+     * An improved solution.
+     *
+     * @param result complete result of the solution, trace included
+     * @param elapsedMs time since the run started
+     * @param statesExplored states expanded so far (0 for strategies that do not search)
+     */
+    record Incumbent(OptimizationResult result, long elapsedMs, long statesExplored) {
+
+        public double score() {
+            return result.score();
+        }
+    }
+
+    /**
+     * Called from the searching thread each time the incumbent improves.
+     *
+     * @return true to keep searching, false to stop and return this solution
+     */
+    boolean improved(Incumbent incumbent);
+
+    /**
+     * Score of the best solution known outside this search, e.g. found by a
+     * concurrent strategy. Searches may prune whatever cannot beat it. Polled
+     * often, so it must be cheap.
+     */
+    default double bestKnownScore() {
+        return Double.NEGATIVE_INFINITY;
+    }
+}
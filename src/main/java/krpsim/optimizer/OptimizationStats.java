@@ -0,0 +1,57 @@
+package krpsim.optimizer;
+
+import java.io.PrintStream;
+
+/**
+ * Counters of one optimization run, to tell where its time went.
+ *
+ * Search strategies fill in what applies to them; the rest stays 0. For the
+ * greedy, every decision point counts as an expanded state. Beam search counts
+ * the candidates that fall off the beam as pruned. With several branch & bound
+ * workers, the peak frontier is the sum of the workers' own peaks.
+ *
+ * @param statesGenerated successor states created (or scored, for beam candidates)
+ * @param statesExpanded states taken from the frontier (decision points, for the greedy)
+ * @param prunedByBound states dropped because their bound could not beat the incumbent
+ * @param deduplicated states dropped because an equivalent state was already expanded
+ * @param peakFrontier largest number of open states at once
+ * @param eventsProcessed completion events applied while searching
+ * @param timeToFirstMs time until the first solution was found, or -1 if none
+ * @param timeToBestMs time until the returned solution was found, or -1 if none
+ * @param elapsedMs duration of the whole run
+ */
+public record OptimizationStats(
+    long statesGenerated,
+    long statesExpanded,
+    long prunedByBound,
+    long deduplicated,
+    long peakFrontier,
+    long eventsProcessed,
+    long timeToFirstMs,
+    long timeToBestMs,
+    long elapsedMs
+) {
+
+    /** Stats of a result that was not measured. */
+    public static final OptimizationStats NONE = new OptimizationStats(0, 0, 0, 0, 0, 0, -1, -1, 0);
+
+    /**
+     * Prints the counters, one per line.
+     */
+    public void print(PrintStream out) {
+        out.println("Stats :");
+        out.println("  states generated   " + statesGenerated);
+        out.println("  states expanded    " + statesExpanded);
+        out.println("  pruned by bound    " + prunedByBound);
+        out.println("  deduplicated       " + deduplicated);
+        out.println("  peak frontier      " + peakFrontier);
+        out.println("  events processed   " + eventsProcessed);
+        out.println("  time to first      " + formatTime(timeToFirstMs));
+        out.println("  time to best       " + formatTime(timeToBestMs));
+        out.println("  elapsed            " + elapsedMs + " ms");
+    }
+
+    private static String formatTime(long ms) {
+        return ms < 0 ? "-" : ms + " ms";
+    }
+}
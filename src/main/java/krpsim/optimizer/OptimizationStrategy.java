@@ -1,6 +1,8 @@
 package krpsim.optimizer;
 
-import krpsim.utils.Parser;
+import krpsim.model.CompiledModel;
+import krpsim.trace.TraceBuffer;
+import krpsim.trace.TraceSink;
 import java.util.List;
 import java.util.Map;
 
@@ -20,23 +22,94 @@ public interface OptimizationStrategy {
      * @param finalTime last event time in the simulation
      * @param finished whether all possible processes were completed
      * @param score optimization score (higher is better)
+     * @param stats counters of the run that produced the result
      */
     record OptimizationResult(
         List<String> trace,
         Map<String, Integer> finalStocks,
         int finalTime,
         boolean finished,
-        double score
-    ) {}
+        double score,
+        OptimizationStats stats
+    ) {
+        
+        /**
+         * Result without measured stats.
+         */
+        public OptimizationResult(List<String> trace, Map<String, Integer> finalStocks, int finalTime,
+                                  boolean finished, double score) {
+            this(trace, finalStocks, finalTime, finished, score, OptimizationStats.NONE);
+        }
+        
+        /**
+         * @return same result carrying the given stats
+         */
+        public OptimizationResult withStats(OptimizationStats stats) {
+            return new OptimizationResult(trace, finalStocks, finalTime, finished, score, stats);
+        }
+    }
     
     /**
      * Execute the optimization strategy.
      * 
-     * @param config parsed configuration containing stocks, processes, and optimization targets
+     * @param model compiled configuration containing stocks, processes, and optimization targets
      * @param maxDelay maximum simulation time allowed
      * @return optimization result with trace, final stocks, and score
      */
-    OptimizationResult optimize(Parser.Config config, int maxDelay);
+    OptimizationResult optimize(CompiledModel model, int maxDelay);
+    
+    /**
+     * Execute the optimization strategy, streaming the trace to a sink.
+     * 
+     * Strategies that know their schedule while simulating (greedy) emit entries
+     * as processes start; search strategies only know the winning schedule at
+     * the end, so the default implementation replays the finished trace.
+     * The sink is not closed.
+     * 
+     * @param model compiled configuration containing stocks, processes, and optimization targets
+     * @param maxDelay maximum simulation time allowed
+     * @param sink receives one entry per process start, in trace order
+     * @return optimization result whose trace is empty (it went to the sink)
+     */
+    default OptimizationResult optimize(CompiledModel model, int maxDelay, TraceSink sink) {
+        OptimizationResult result = optimize(model, maxDelay);
+        replay(result, model, sink);
+        return new OptimizationResult(List.of(), result.finalStocks(), result.finalTime(), result.finished(),
+            result.score(), result.stats());
+    }
+    
+    /**
+     * Execute the optimization strategy as an anytime search, reporting every
+     * improved solution to the listener as soon as it is found.
+     * 
+     * Search strategies report their incumbents while they run and stop early when
+     * the listener asks to. The default implementation reports the final result once.
+     * 
+     * @param model compiled configuration containing stocks, processes, and optimization targets
+     * @param maxDelay maximum simulation time allowed
+     * @param listener receives improved solutions; returns false to stop the search
+     * @return final result of the run
+     */
+    default OptimizationResult optimize(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        long start = System.currentTimeMillis();
+        OptimizationResult result = optimize(model, maxDelay);
+        listener.improved(new IncumbentListener.Incumbent(result, System.currentTimeMillis() - start, 0));
+        return result;
+    }
+    
+    /**
+     * Sends the trace of a finished result to a sink, in trace order.
+     */
+    static void replay(OptimizationResult result, CompiledModel model, TraceSink sink) {
+        if (result.trace() instanceof TraceBuffer buffer) {
+            buffer.replay(sink);
+        } else {
+            for (String line : result.trace()) {
+                int colon = line.indexOf(':');
+                sink.accept(Integer.parseInt(line.substring(0, colon)), model.processIndex(line.substring(colon + 1)));
+            }
+        }
+    }
     
     /**
      * Get the name of this optimization strategy.
@@ -0,0 +1,201 @@
+package krpsim.optimizer;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import krpsim.model.CompiledModel;
+
+/**
+ * Portfolio strategy racing several strategies concurrently.
+ *
+ * Greedy, beam search at several widths and branch & bound each run on their
+ * own thread under the same {@link SearchBudget}, whose time limit is the
+ * deadline of the race. Every improvement is published to a shared incumbent;
+ * branch & bound prunes against it, so a good beam solution found early cuts
+ * its tree. When the deadline passes, or branch & bound exhausts its tree (the
+ * incumbent is then optimal), the remaining members are stopped through a
+ * child of the budget's {@link CancellationToken} and the best result found by
+ * any of them is returned, with the stats of the member that found it.
+ */
+public class PortfolioOptimizer implements OptimizationStrategy {
+
+    private static final long DEFAULT_DEADLINE_MS = 5000;
+    private static final int MEMBER_THREADS = 1;
+    private static final int[] BEAM_WIDTHS = {4, 16, 64};
+    // Time left to the members to notice a stop request before the pool is torn down.
+    private static final long STOP_GRACE_MS = 1000;
+
+    private final SearchBudget budget;
+    private volatile String lastWinner;
+
+    public PortfolioOptimizer() {
+        this(SearchBudget.ofMillis(DEFAULT_DEADLINE_MS));
+    }
+
+    /**
+     * @param budget limits applied to every member; its time limit is the shared deadline
+     */
+    public PortfolioOptimizer(SearchBudget budget) {
+        this.budget = budget;
+    }
+
+    @Override
+    public String getName() {
+        String deadline = budget.hasTimeLimit() ? budget.timeLimitMs() + "ms" : "none";
+        return "Portfolio (deadline=" + deadline + ")";
+    }
+
+    /**
+     * @return name of the member that found the result of the last run
+     */
+    public String getWinner() {
+        return lastWinner;
+    }
+
+    /**
+     * One racing strategy.
+     */
+    private record Member(OptimizationStrategy strategy) {
+
+        /**
+         * @return true if the member searched its whole tree, so nothing better is left to find
+         */
+        boolean exhaustive() {
+            return strategy instanceof BranchAndBoundOptimizer bb && bb.isComplete();
+        }
+    }
+
+    private List<Member> members(SearchBudget memberBudget) {
+        return List.of(
+            new Member(new GreedyOptimizer(false, memberBudget)),
+            new Member(new BeamSearchOptimizer(BEAM_WIDTHS[0], MEMBER_THREADS, memberBudget)),
+            new Member(new BeamSearchOptimizer(BEAM_WIDTHS[1], MEMBER_THREADS, memberBudget)),
+            new Member(new BeamSearchOptimizer(BEAM_WIDTHS[2], MEMBER_THREADS, memberBudget)),
+            new Member(new BranchAndBoundOptimizer(memberBudget, MEMBER_THREADS)));
+    }
+
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay) {
+        return run(model, maxDelay, null);
+    }
+
+    /**
+     * Reports every improvement of the shared incumbent, whichever member found it.
+     */
+    @Override
+    public OptimizationResult optimize(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        return run(model, maxDelay, listener);
+    }
+
+    private OptimizationResult run(CompiledModel model, int maxDelay, IncumbentListener listener) {
+        long startTime = System.currentTimeMillis();
+        CancellationToken token = budget.token() != null ? budget.token().child() : new CancellationToken();
+        Race race = new Race(listener, startTime, token);
+        List<Member> members = members(budget.withToken(token));
+        long deadline = budget.hasTimeLimit() ? startTime + budget.timeLimitMs() : Long.MAX_VALUE;
+
+        ExecutorService pool = Executors.newFixedThreadPool(members.size());
+        try {
+            ExecutorCompletionService<Member> done = new ExecutorCompletionService<>(pool);
+            for (Member member : members) {
+                done.submit(() -> {
+                    OptimizationResult result = member.strategy().optimize(model, maxDelay, race.listenerFor(member));
+                    // Also covers members whose last word was a stop request.
+                    race.offer(member, result, 0);
+                    return member;
+                });
+            }
+            int running = members.size();
+            while (running > 0) {
+                Future<Member> finished;
+                if (token.isCancelled()) {
+                    finished = done.poll(STOP_GRACE_MS, TimeUnit.MILLISECONDS);
+                } else if (deadline == Long.MAX_VALUE) {
+                    finished = done.take();
+                } else {
+                    long remaining = deadline - System.currentTimeMillis();
+                    finished = remaining > 0 ? done.poll(remaining, TimeUnit.MILLISECONDS) : null;
+                }
+                if (finished == null) {
+                    // Deadline passed (or the grace period after a stop request ran out).
+                    if (token.isCancelled()) break;
+                    token.cancel();
+                    continue;
+                }
+                running--;
+                if (finished.get().exhaustive()) token.cancel();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Portfolio member failed", e.getCause());
+        } finally {
+            token.cancel();
+            pool.shutdownNow();
+        }
+
+        Race.Best best = race.best;
+        if (best == null) {
+            // No member finished in time; the greedy schedule is the cheapest fallback.
+            return new GreedyOptimizer().optimize(model, maxDelay);
+        }
+        lastWinner = best.member().strategy().getName();
+        return best.result();
+    }
+
+    /**
+     * Shared incumbent of one portfolio run.
+     */
+    private static final class Race {
+        record Best(Member member, OptimizationResult result) {}
+
+        final IncumbentListener listener;
+        final long startTime;
+        final CancellationToken token;
+        volatile Best best;
+        // Written under the lock, read by every member's pruning.
+        volatile double bestScore = Double.NEGATIVE_INFINITY;
+
+        Race(IncumbentListener listener, long startTime, CancellationToken token) {
+            this.listener = listener;
+            this.startTime = startTime;
+            this.token = token;
+        }
+
+        IncumbentListener listenerFor(Member member) {
+            return new IncumbentListener() {
+                @Override
+                public boolean improved(Incumbent incumbent) {
+                    offer(member, incumbent.result(), incumbent.statesExplored());
+                    return !token.isCancelled();
+                }
+
+                @Override
+                public double bestKnownScore() {
+                    return bestScore;
+                }
+            };
+        }
+
+        synchronized void offer(Member member, OptimizationResult result, long statesExplored) {
+            if (best != null && best.member() == member && result.score() == bestScore) {
+                // Final result of the member holding the incumbent: same solution, now with its stats.
+                best = new Best(member, result);
+                return;
+            }
+            if (result.score() <= bestScore) return;
+            best = new Best(member, result);
+            bestScore = result.score();
+            if (listener != null) {
+                IncumbentListener.Incumbent found = new IncumbentListener.Incumbent(
+                    result, System.currentTimeMillis() - startTime, statesExplored);
+                if (!listener.improved(found)) token.cancel();
+            }
+        }
+    }
+}
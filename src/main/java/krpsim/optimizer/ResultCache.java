@@ -0,0 +1,300 @@
+package krpsim.optimizer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import krpsim.model.CompiledModel;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.trace.TraceSink;
+
+/**
+ * On-disk cache of optimization results, one file per (configuration, delay,
+ * strategy) triple.
+ *
+ * The configuration is identified by its {@link CompiledModel#fingerprint()},
+ * the strategy by a caller-built key holding every parameter that changes its
+ * result (level, beam width, threads, budgets...). An entry stores the final
+ * stocks, time, score and stats, and the trace as (time, process id, count)
+ * triples, so a hit replays exactly what the run wrote.
+ *
+ * Entries are written to a temporary file and renamed into place, so
+ * concurrent writers never expose a partial entry; the last rename wins.
+ * Reading an entry refreshes its modification time, and after each write the
+ * least recently used entries are deleted until the directory fits its size
+ * limit. Temporary files are only deleted once they are old enough to have
+ * been left behind by a killed writer. Unreadable, oversized or mismatching
+ * entries are treated as misses.
+ */
+public final class ResultCache {
+
+    /** File name suffix of cache entries. */
+    public static final String EXTENSION = ".krpr";
+
+    private static final byte[] MAGIC = {'K', 'R', 'P', 'R'};
+    // Bump when a strategy change makes stored results stale.
+    private static final int VERSION = 2;
+    // Bytes per recorded trace entry: time, process id, count.
+    private static final int ENTRY_BYTES = 12;
+    // Age past which a temporary file cannot belong to a writer still running.
+    private static final long STALE_TMP_MS = 24 * 60 * 60 * 1000L;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    /**
+     * @param directory cache directory, created on first write
+     * @param maxBytes total size the directory is trimmed to after a write
+     */
+    public ResultCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Looks up a stored result and, on a hit, replays its trace to the sink.
+     * Nothing reaches the sink on a miss.
+     *
+     * @param strategyKey parameters of the strategy that would produce the result
+     * @return stored result with an empty trace (it went to the sink), or null on a miss
+     */
+    public OptimizationResult get(CompiledModel model, int maxDelay, String strategyKey, TraceSink sink) {
+        Path path = entryPath(model, maxDelay, strategyKey);
+        if (!Files.isRegularFile(path)) return null;
+        ByteBuffer in;
+        try (FileChannel channel = FileChannel.open(path)) {
+            in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException | IllegalArgumentException e) {
+            // Unreadable, or larger than a single mapping can hold.
+            return null;
+        }
+        OptimizationResult result;
+        int traceStart;
+        try {
+            byte[] magic = new byte[MAGIC.length];
+            in.get(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.getInt() != VERSION || in.getLong() != model.fingerprint()
+                    || in.getInt() != maxDelay || !readString(in).equals(strategyKey)) {
+                return null;
+            }
+            int finalTime = in.getInt();
+            boolean finished = in.get() != 0;
+            double score = in.getDouble();
+            OptimizationStats stats = new OptimizationStats(in.getLong(), in.getLong(), in.getLong(), in.getLong(),
+                in.getLong(), in.getLong(), in.getLong(), in.getLong(), in.getLong());
+            Map<String, Integer> finalStocks = new LinkedHashMap<>();
+            for (int i = in.getInt(); i > 0; i--) finalStocks.put(readString(in), in.getInt());
+            result = new OptimizationResult(List.of(), finalStocks, finalTime, finished, score, stats);
+
+            // Check the whole trace before replaying any of it.
+            long entries = in.getLong();
+            if (entries * ENTRY_BYTES != in.remaining()) return null;
+            traceStart = in.position();
+            for (long i = 0; i < entries; i++) {
+                in.getInt();
+                int process = in.getInt();
+                if (process < 0 || process >= model.processCount() || in.getInt() < 1) return null;
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException | NegativeArraySizeException e) {
+            return null;
+        }
+        in.position(traceStart);
+        while (in.hasRemaining()) {
+            int time = in.getInt();
+            int process = in.getInt();
+            int count = in.getInt();
+            if (count == 1) {
+                sink.accept(time, process);
+            } else {
+                sink.accept(time, process, count);
+            }
+        }
+        try {
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Evicted meanwhile, or read-only: the hit stands.
+        }
+        return result;
+    }
+
+    /**
+     * @return sink recording a run's trace for {@link #put}; it stops recording
+     *         once the trace outgrows a quarter of the cache
+     */
+    public Recorder recorder() {
+        return new Recorder(maxBytes / 4 / ENTRY_BYTES);
+    }
+
+    /**
+     * Stores a result with the trace its run sent to the recorder, then evicts
+     * the least recently used entries beyond the size limit. Results whose
+     * trace was too long to record are not stored.
+     *
+     * @param strategyKey parameters of the strategy that produced the result
+     * @throws IOException if the entry cannot be written
+     */
+    public void put(CompiledModel model, int maxDelay, String strategyKey, OptimizationResult result,
+                    Recorder trace) throws IOException {
+        if (trace.overflowed) return;
+        Files.createDirectories(directory);
+        Path path = entryPath(model, maxDelay, strategyKey);
+        Path tmp = Files.createTempFile(directory, path.getFileName().toString(), TMP_SUFFIX);
+        try {
+            try (OutputStream file = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))) {
+                out.write(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(model.fingerprint());
+                out.writeInt(maxDelay);
+                writeString(out, strategyKey);
+                out.writeInt(result.finalTime());
+                out.writeBoolean(result.finished());
+                out.writeDouble(result.score());
+                OptimizationStats s = result.stats();
+                for (long v : new long[] {s.statesGenerated(), s.statesExpanded(), s.prunedByBound(),
+                        s.deduplicated(), s.peakFrontier(), s.eventsProcessed(), s.timeToFirstMs(),
+                        s.timeToBestMs(), s.elapsedMs()}) {
+                    out.writeLong(v);
+                }
+                out.writeInt(result.finalStocks().size());
+                for (Map.Entry<String, Integer> e : result.finalStocks().entrySet()) {
+                    writeString(out, e.getKey());
+                    out.writeInt(e.getValue());
+                }
+                out.writeLong(trace.size);
+                for (int i = 0; i < trace.size; i++) {
+                    out.writeInt(trace.entries[3 * i]);
+                    out.writeInt(trace.entries[3 * i + 1]);
+                    out.writeInt(trace.entries[3 * i + 2]);
+                }
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries (and stale temporary files)
+     * until the directory fits the size limit. Recent temporary files may be
+     * entries another writer is still writing, so they are left alone.
+     */
+    private void evict() throws IOException {
+        record Entry(Path path, long size, long lastUsed) {}
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        long staleBefore = System.currentTimeMillis() - STALE_TMP_MS;
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(directory, "*{" + EXTENSION + "," + TMP_SUFFIX + "}")) {
+            for (Path p : dir) {
+                try {
+                    BasicFileAttributes attrs = Files.readAttributes(p, BasicFileAttributes.class);
+                    if (p.getFileName().toString().endsWith(TMP_SUFFIX)
+                            && attrs.lastModifiedTime().toMillis() > staleBefore) {
+                        continue;
+                    }
+                    entries.add(new Entry(p, attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    total += attrs.size();
+                } catch (NoSuchFileException e) {
+                    // Removed by a concurrent writer.
+                }
+            }
+        }
+        if (total <= maxBytes) return;
+        entries.sort(Comparator.comparingLong(Entry::lastUsed));
+        for (Entry e : entries) {
+            if (total <= maxBytes) break;
+            Files.deleteIfExists(e.path());
+            total -= e.size();
+        }
+    }
+
+    private Path entryPath(CompiledModel model, int maxDelay, String strategyKey) {
+        // FNV-1a over the key, seeded with the fingerprint and delay
+        long h = model.fingerprint() * 31 + maxDelay;
+        for (byte b : strategyKey.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        return directory.resolve(String.format("%016x%s", h, EXTENSION));
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Trace sink packing entries as (time, process id, count) triples, up to a
+     * maximum number of entries.
+     */
+    public static final class Recorder implements TraceSink {
+
+        private final long maxEntries;
+        private int[] entries = new int[48];
+        private int size;
+        private boolean overflowed;
+
+        private Recorder(long maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        public void accept(int time, int process) {
+            accept(time, process, 1);
+        }
+
+        @Override
+        public void accept(int time, int process, int count) {
+            if (overflowed) return;
+            if (size >= maxEntries || size >= Integer.MAX_VALUE / 6) {
+                overflowed = true;
+                entries = null;
+                return;
+            }
+            if (3 * size == entries.length) {
+                entries = Arrays.copyOf(entries, entries.length * 2);
+            }
+            entries[3 * size] = time;
+            entries[3 * size + 1] = process;
+            entries[3 * size + 2] = count;
+            size++;
+        }
+
+        @Override
+        public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period,
+                                   long repetitions) {
+            if (overflowed || (double) length * repetitions > maxEntries - size) {
+                overflowed = true;
+                entries = null;
+                return;
+            }
+            TraceSink.super.acceptRepeated(times, processes, counts, length, period, repetitions);
+        }
+    }
+}
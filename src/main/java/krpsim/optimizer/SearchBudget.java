@@ -0,0 +1,169 @@
+package krpsim.optimizer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resource limits of one optimization run.
+ *
+ * A run stops at whichever comes first: the wall-clock limit, the number of
+ * search nodes (states expanded, or decision points for the greedy), the heap
+ * ceiling, or cancellation of the token. Strategies then return the best
+ * solution found so far. Limits are checked through a {@link Meter}, which
+ * only reads the clock and the heap every {@value #CHECK_INTERVAL} nodes per
+ * thread, so those limits may be overshot by that much. A node limit counts
+ * every node as it is visited, so it is only overshot by the nodes other
+ * threads are expanding at the same time.
+ *
+ * @param timeLimitMs wall-clock limit in milliseconds
+ * @param nodeLimit maximum number of search nodes
+ * @param memoryLimitBytes ceiling on used heap, garbage included
+ * @param token cancellation token, or null if the run cannot be cancelled
+ */
+public record SearchBudget(long timeLimitMs, long nodeLimit, long memoryLimitBytes, CancellationToken token) {
+
+    public static final long NO_LIMIT = Long.MAX_VALUE;
+    private static final int CHECK_INTERVAL = 256;
+
+    /**
+     * @return budget without any limit
+     */
+    public static SearchBudget unlimited() {
+        return new SearchBudget(NO_LIMIT, NO_LIMIT, NO_LIMIT, null);
+    }
+
+    /**
+     * @return budget limited to the given wall-clock time only
+     */
+    public static SearchBudget ofMillis(long timeLimitMs) {
+        return unlimited().withTimeLimit(timeLimitMs);
+    }
+
+    public SearchBudget withTimeLimit(long timeLimitMs) {
+        return new SearchBudget(timeLimitMs, nodeLimit, memoryLimitBytes, token);
+    }
+
+    public SearchBudget withNodeLimit(long nodeLimit) {
+        return new SearchBudget(timeLimitMs, nodeLimit, memoryLimitBytes, token);
+    }
+
+    public SearchBudget withMemoryLimit(long memoryLimitBytes) {
+        return new SearchBudget(timeLimitMs, nodeLimit, memoryLimitBytes, token);
+    }
+
+    public SearchBudget withToken(CancellationToken token) {
+        return new SearchBudget(timeLimitMs, nodeLimit, memoryLimitBytes, token);
+    }
+
+    public boolean hasTimeLimit() {
+        return timeLimitMs != NO_LIMIT;
+    }
+
+    /**
+     * Starts the clock of a run.
+     */
+    public Meter start() {
+        return new Meter(this);
+    }
+
+    /**
+     * Budget consumption of one run, shared by all its threads.
+     */
+    public static final class Meter {
+
+        private final SearchBudget budget;
+        private final long startNanos = System.nanoTime();
+        private final AtomicLong nodes = new AtomicLong();
+        // Latched once a limit is hit, so the other threads stop without re-checking.
+        private volatile boolean exhausted;
+
+        private Meter(SearchBudget budget) {
+            this.budget = budget;
+        }
+
+        public long elapsedMs() {
+            return (System.nanoTime() - startNanos) / 1_000_000;
+        }
+
+        /**
+         * @return nodes charged so far (approximate while probes without a node
+         *         limit are running)
+         */
+        public long nodes() {
+            return nodes.get();
+        }
+
+        /**
+         * Cheap check of the latched state and the token; does not read the clock.
+         */
+        public boolean exhausted() {
+            return exhausted || (budget.token != null && budget.token.isCancelled());
+        }
+
+        /**
+         * Counts the nodes and checks every limit.
+         *
+         * @return true once the budget is exhausted
+         */
+        public boolean charge(long count) {
+            long total = nodes.addAndGet(count);
+            if (exhausted()) return true;
+            if (total >= budget.nodeLimit || (budget.hasTimeLimit() && elapsedMs() >= budget.timeLimitMs)
+                    || usedHeap() > budget.memoryLimitBytes) {
+                exhausted = true;
+            }
+            return exhausted;
+        }
+
+        /**
+         * Counts one node against the node limit, without reading the clock or the heap.
+         *
+         * @return true once the budget is exhausted
+         */
+        private boolean chargeNode() {
+            if (nodes.incrementAndGet() >= budget.nodeLimit) exhausted = true;
+            return exhausted();
+        }
+
+        /**
+         * @return per-thread counter amortizing the checks over several nodes
+         */
+        public Probe probe() {
+            return new Probe(this);
+        }
+
+        private long usedHeap() {
+            if (budget.memoryLimitBytes == NO_LIMIT) return 0;
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+    }
+
+    /**
+     * Node counter owned by a single thread. Only every
+     * {@value SearchBudget#CHECK_INTERVAL}th node reads the clock and the heap;
+     * under a node limit each node is still counted on its own.
+     */
+    public static final class Probe {
+
+        private final Meter meter;
+        private final boolean countEach;
+        private int untilCheck = CHECK_INTERVAL;
+
+        private Probe(Meter meter) {
+            this.meter = meter;
+            this.countEach = meter.budget.nodeLimit != NO_LIMIT;
+        }
+
+        /**
+         * Counts one node.
+         *
+         * @return true once the budget is exhausted
+         */
+        public boolean tick() {
+            if (countEach && meter.chargeNode()) return true;
+            if (--untilCheck > 0) return meter.exhausted();
+            untilCheck = CHECK_INTERVAL;
+            return meter.charge(countEach ? 0 : CHECK_INTERVAL);
+        }
+    }
+}
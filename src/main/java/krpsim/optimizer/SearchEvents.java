@@ -0,0 +1,106 @@
+package krpsim.optimizer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+
+/**
+ * JDK Flight Recorder events emitted by the search strategies.
+ *
+ * Expansions are recorded in batches (a few hundred states, or one beam
+ * layer, per event) so the hot loop only updates plain counters. Batches are
+ * disabled by default; enable them in a JFR settings file
+ * ({@code krpsim.Expansion#enabled=true}) to profile a search. The per-run
+ * summary is enabled and cheap.
+ *
+ * Loading the first event class starts the recorder's machinery, which takes
+ * hundreds of milliseconds, so events are only created when the recorder is
+ * already running at the start of a run (see {@link #recording()}).
+ */
+final class SearchEvents {
+
+    private SearchEvents() {}
+
+    /**
+     * @return true if the flight recorder is running in this JVM
+     */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    @Name("krpsim.Expansion")
+    @Label("State Expansion Batch")
+    @Category({"krpsim", "Search"})
+    @Description("Consecutive state expansions of one search thread, with the successors they generated and pruned")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Expansion extends Event {
+        @Label("Strategy")
+        String strategy;
+        @Label("States Expanded")
+        long expanded;
+        @Label("States Generated")
+        long generated;
+        @Label("Pruned By Bound")
+        long prunedByBound;
+        @Label("Deduplicated")
+        long deduplicated;
+        @Label("Frontier Size")
+        long frontier;
+    }
+
+    @Name("krpsim.SearchRun")
+    @Label("Search Run")
+    @Category({"krpsim", "Search"})
+    @Description("Summary of one optimization run")
+    @StackTrace(false)
+    static final class SearchRun extends Event {
+        @Label("Strategy")
+        String strategy;
+        @Label("States Generated")
+        long statesGenerated;
+        @Label("States Expanded")
+        long statesExpanded;
+        @Label("Pruned By Bound")
+        long prunedByBound;
+        @Label("Deduplicated")
+        long deduplicated;
+        @Label("Peak Frontier")
+        long peakFrontier;
+        @Label("Events Processed")
+        long eventsProcessed;
+        @Label("Score")
+        double score;
+        @Label("Elapsed")
+        @Timespan(Timespan.MILLISECONDS)
+        long elapsed;
+    }
+
+    /**
+     * Records the summary of a finished run.
+     */
+    static void finished(String strategy, OptimizationResult result) {
+        if (!recording()) return;
+        SearchRun event = new SearchRun();
+        if (!event.isEnabled()) return;
+        OptimizationStats stats = result.stats();
+        event.strategy = strategy;
+        event.statesGenerated = stats.statesGenerated();
+        event.statesExpanded = stats.statesExpanded();
+        event.prunedByBound = stats.prunedByBound();
+        event.deduplicated = stats.deduplicated();
+        event.peakFrontier = stats.peakFrontier();
+        event.eventsProcessed = stats.eventsProcessed();
+        event.score = result.score();
+        event.elapsed = stats.elapsedMs();
+        event.commit();
+    }
+}
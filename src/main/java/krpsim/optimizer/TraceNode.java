@@ -0,0 +1,65 @@
+package krpsim.optimizer;
+
+import java.util.List;
+
+import krpsim.model.CompiledModel;
+import krpsim.trace.TraceBuffer;
+
+/**
+ * Persistent trace of process starts used by the search strategies.
+ *
+ * Each node records one start and points to the previous one, so sibling
+ * search states share their common prefix and appending is O(1). The trace
+ * is only materialized for the winning state. The empty trace is {@code null}.
+ */
+final class TraceNode {
+
+    final TraceNode parent;
+    final int time;
+    final int process;
+    final int length;
+
+    private TraceNode(TraceNode parent, int time, int process) {
+        this.parent = parent;
+        this.time = time;
+        this.process = process;
+        this.length = length(parent) + 1;
+    }
+
+    /**
+     * @return trace extended with a start of the process at the given time
+     */
+    static TraceNode append(TraceNode parent, int time, int process) {
+        return new TraceNode(parent, time, process);
+    }
+
+    static int length(TraceNode trace) {
+        return trace == null ? 0 : trace.length;
+    }
+
+    /**
+     * @return trace lines in "time:processName" format, oldest first
+     */
+    static List<String> toList(TraceNode trace, CompiledModel model) {
+        TraceNode[] nodes = new TraceNode[length(trace)];
+        for (TraceNode n = trace; n != null; n = n.parent) {
+            nodes[n.length - 1] = n;
+        }
+        TraceBuffer buffer = new TraceBuffer(model::processName);
+        for (TraceNode n : nodes) {
+            buffer.accept(n.time, n.process);
+        }
+        return buffer;
+    }
+
+    /**
+     * @return per-process flags telling which processes appear in the trace
+     */
+    static boolean[] startedProcesses(TraceNode trace, int processCount) {
+        boolean[] started = new boolean[processCount];
+        for (TraceNode n = trace; n != null; n = n.parent) {
+            started[n.process] = true;
+        }
+        return started;
+    }
+}
@@ -0,0 +1,60 @@
+package krpsim.optimizer;
+
+import java.util.Arrays;
+
+/**
+ * Bounded transposition table keyed by simulation state hashes.
+ *
+ * Entries live in 4-way buckets of a fixed power-of-two array. A new state
+ * evicts the lowest-scored entry of its bucket, so memory stays constant and
+ * the most promising states are the ones remembered.
+ */
+final class TranspositionTable {
+
+    private static final int WAYS = 4;
+    // Slot marker for an unused entry; real hashes equal to it are remapped.
+    private static final long EMPTY = 0;
+
+    private final long[] keys;
+    private final double[] scores;
+    private final int bucketMask;
+
+    /**
+     * @param capacityBits log2 of the number of entries
+     */
+    TranspositionTable(int capacityBits) {
+        int capacity = 1 << Math.max(2, capacityBits);
+        this.keys = new long[capacity];
+        this.scores = new double[capacity];
+        this.bucketMask = capacity / WAYS - 1;
+        Arrays.fill(scores, Double.NEGATIVE_INFINITY);
+    }
+
+    /**
+     * Records a state about to be expanded.
+     *
+     * @param hash state hash
+     * @param score score reached in that state
+     * @return false if the state was already expanded with an equal or better score
+     */
+    boolean visit(long hash, double score) {
+        long key = hash == EMPTY ? 1 : hash;
+        int base = ((int) (key ^ (key >>> 32)) & bucketMask) * WAYS;
+        int victim = base;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] == key) {
+                if (scores[i] >= score) return false;
+                scores[i] = score;
+                return true;
+            }
+            if (keys[i] == EMPTY) {
+                victim = i;
+                break;
+            }
+            if (scores[i] < scores[victim]) victim = i;
+        }
+        keys[victim] = key;
+        scores[victim] = score;
+        return true;
+    }
+}
@@ -0,0 +1,55 @@
+package krpsim.trace;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Layout of the compact binary trace format ({@code .krpt}).
+ *
+ * <pre>
+ * header : "KRPT" | version (1 byte) | config fingerprint (8 bytes, big-endian)
+ *          | process count (varint) | per process: name length (varint), UTF-8 name
+ * entries: zigzag varint time delta from the previous entry
+ *          | varint (process id &lt;&lt; 1 | batched) | varint count if batched
+ * </pre>
+ *
+ * Entries run to the end of the file. Times usually increase, so deltas
+ * take one or two bytes and a whole entry typically fits in three. A batched
+ * start of several instances is one entry with its count; single starts
+ * carry no count. Version 1 files have no batched bit and one instance per
+ * entry; readers still accept them.
+ */
+public final class BinaryTraceFormat {
+
+    static final byte[] MAGIC = {'K', 'R', 'P', 'T'};
+    static final int VERSION = 2;
+    // Last version without instance counts.
+    static final int VERSION_SINGLE = 1;
+
+    /** Conventional extension of binary trace files. */
+    public static final String EXTENSION = ".krpt";
+
+    private BinaryTraceFormat() {
+    }
+
+    /**
+     * @return true if the file starts with the binary trace magic
+     * @throws IOException if the file cannot be read
+     */
+    public static boolean isBinary(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return Arrays.equals(in.readNBytes(MAGIC.length), MAGIC);
+        }
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
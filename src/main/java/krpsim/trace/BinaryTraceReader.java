@@ -0,0 +1,193 @@
+package krpsim.trace;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads a {@link BinaryTraceFormat} file through a memory-mapped window.
+ *
+ * The header is decoded on open; entries are then decoded one at a time
+ * with {@link #next()}, without copying the file. The window slides forward
+ * as entries are read, so files of any length can be read; the reader must
+ * be closed to release the file.
+ */
+public final class BinaryTraceReader implements Closeable {
+
+    // Bytes mapped at a time; the window moves on when less than an entry is left.
+    private static final int WINDOW_BYTES = 1 << 26;
+    // Three varints of at most five bytes each.
+    private static final int MAX_ENTRY_BYTES = 15;
+
+    private final FileChannel channel;
+    private final long size;
+    // File offset of the start of the mapped window.
+    private long windowStart;
+    private MappedByteBuffer buffer;
+    private final boolean counted;
+    private final long fingerprint;
+    private final List<String> processNames;
+    private int time;
+    private int process;
+    private int count;
+
+    private BinaryTraceReader(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.size = channel.size();
+        this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_BYTES));
+        try {
+            byte[] magic = new byte[BinaryTraceFormat.MAGIC.length];
+            buffer.get(magic);
+            if (!Arrays.equals(magic, BinaryTraceFormat.MAGIC)) {
+                throw new IOException("Not a binary trace");
+            }
+            int version = buffer.get() & 0xFF;
+            if (version != BinaryTraceFormat.VERSION && version != BinaryTraceFormat.VERSION_SINGLE) {
+                throw new IOException("Unsupported binary trace version " + version);
+            }
+            counted = version != BinaryTraceFormat.VERSION_SINGLE;
+            fingerprint = buffer.getLong();
+            int count = getVarint();
+            List<String> names = new ArrayList<>(Math.min(count, 1 << 16));
+            for (int i = 0; i < count; i++) {
+                ensure(MAX_ENTRY_BYTES);
+                byte[] bytes = new byte[getVarint()];
+                ensure(bytes.length);
+                buffer.get(bytes);
+                names.add(new String(bytes, StandardCharsets.UTF_8));
+            }
+            processNames = List.copyOf(names);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IOException("Truncated binary trace header", e);
+        }
+    }
+
+    /**
+     * Maps the start of the file and decodes its header.
+     *
+     * @throws IOException if the file cannot be read or is not a binary trace
+     */
+    public static BinaryTraceReader open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new BinaryTraceReader(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return fingerprint of the configuration the trace was written for
+     */
+    public long fingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * @return process names of the writing configuration, indexed by the ids in the entries
+     */
+    public List<String> processNames() {
+        return processNames;
+    }
+
+    /**
+     * Decodes the next entry.
+     *
+     * @return false at the end of the trace
+     * @throws IOException if the last entry is truncated, names an unknown process
+     *         or has a count below 1
+     */
+    public boolean next() throws IOException {
+        ensure(MAX_ENTRY_BYTES);
+        if (!buffer.hasRemaining()) return false;
+        try {
+            time += BinaryTraceFormat.unzigzag(getVarint());
+            process = getVarint();
+            count = 1;
+            if (counted) {
+                boolean batched = (process & 1) != 0;
+                process >>>= 1;
+                if (batched) count = getVarint();
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated binary trace entry", e);
+        }
+        if (process < 0 || process >= processNames.size()) {
+            throw new IOException("Unknown process id " + process + " in binary trace");
+        }
+        if (count < 1) {
+            throw new IOException("Bad instance count " + count + " in binary trace");
+        }
+        return true;
+    }
+
+    /**
+     * @return start time of the current entry
+     */
+    public int time() {
+        return time;
+    }
+
+    /**
+     * @return process id of the current entry
+     */
+    public int process() {
+        return process;
+    }
+
+    /**
+     * @return number of instances started by the current entry, at least 1
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Feeds every remaining entry to the sink.
+     */
+    public void readAll(TraceSink sink) throws IOException {
+        while (next()) {
+            if (count == 1) {
+                sink.accept(time, process);
+            } else {
+                sink.accept(time, process, count);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Moves the window to the current position if fewer than {@code bytes}
+     * bytes are left in it and the file has more.
+     */
+    private void ensure(int bytes) throws IOException {
+        long position = windowStart + buffer.position();
+        if (buffer.remaining() >= bytes || windowStart + buffer.limit() >= size) return;
+        windowStart = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position,
+            Math.min(size - position, Math.max(bytes, WINDOW_BYTES)));
+    }
+
+    private int getVarint() {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new BufferUnderflowException();
+    }
+}
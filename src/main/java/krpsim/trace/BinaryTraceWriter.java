@@ -0,0 +1,117 @@
+package krpsim.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Writes trace entries in the {@link BinaryTraceFormat}.
+ */
+public final class BinaryTraceWriter implements TraceSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Longest entry: three 5-byte varints.
+    private static final int MAX_ENTRY = 15;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private int lastTime;
+
+    /**
+     * Creates (or truncates) the trace file and writes its header.
+     *
+     * @param path output file
+     * @param fingerprint fingerprint of the configuration the trace belongs to
+     * @param processNames process names, indexed by process id
+     * @throws IOException if the file cannot be written
+     */
+    public BinaryTraceWriter(Path path, long fingerprint, List<String> processNames) throws IOException {
+        this.channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            buffer.put(BinaryTraceFormat.MAGIC);
+            buffer.put((byte) BinaryTraceFormat.VERSION);
+            buffer.putLong(fingerprint);
+            ensure(5);
+            putVarint(processNames.size());
+            for (String name : processNames) {
+                byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+                ensure(5);
+                putVarint(bytes.length);
+                for (int off = 0; off < bytes.length; ) {
+                    ensure(1);
+                    int n = Math.min(bytes.length - off, buffer.remaining());
+                    buffer.put(bytes, off, n);
+                    off += n;
+                }
+            }
+        } catch (UncheckedIOException e) {
+            channel.close();
+            throw e.getCause();
+        }
+    }
+
+    @Override
+    public void accept(int time, int process) {
+        ensure(MAX_ENTRY);
+        putVarint(BinaryTraceFormat.zigzag(time - lastTime));
+        putVarint(process << 1);
+        lastTime = time;
+    }
+
+    /**
+     * Writes batched starts as a single entry with their count.
+     */
+    @Override
+    public void accept(int time, int process, int count) {
+        if (count == 1) {
+            accept(time, process);
+            return;
+        }
+        ensure(MAX_ENTRY);
+        putVarint(BinaryTraceFormat.zigzag(time - lastTime));
+        putVarint(process << 1 | 1);
+        putVarint(count);
+        lastTime = time;
+    }
+
+    private void putVarint(int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private void ensure(int bytes) {
+        if (buffer.remaining() < bytes) flush();
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
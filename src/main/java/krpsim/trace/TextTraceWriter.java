@@ -0,0 +1,167 @@
+package krpsim.trace;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Writes trace entries as "time:processName" lines to a file or another channel.
+ *
+ * Lines are encoded straight into a buffer flushed to the channel;
+ * process names are encoded once per process, so no string is built per line.
+ * Batched starts are written one line per instance, or in compact mode as a
+ * single "time:processName:count" line.
+ */
+public final class TextTraceWriter implements TraceSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] NEWLINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final IntFunction<String> processNames;
+    private final boolean compact;
+    private byte[][] encodedNames = new byte[16][];
+    private final byte[] digits = new byte[11];
+
+    /**
+     * Creates (or truncates) the trace file.
+     *
+     * @param path output file
+     * @param processNames process name of each process id
+     * @throws IOException if the file cannot be opened
+     */
+    public TextTraceWriter(Path path, IntFunction<String> processNames) throws IOException {
+        this(path, processNames, false);
+    }
+
+    /**
+     * Creates (or truncates) the trace file.
+     *
+     * @param path output file
+     * @param processNames process name of each process id
+     * @param compact write batched starts as one "time:processName:count" line
+     * @throws IOException if the file cannot be opened
+     */
+    public TextTraceWriter(Path path, IntFunction<String> processNames, boolean compact) throws IOException {
+        this(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING),
+            processNames, compact);
+    }
+
+    /**
+     * Writes the trace to a channel, closed with the writer.
+     *
+     * @param channel output channel, e.g. {@link java.nio.channels.Channels#newChannel} of a stream
+     * @param processNames process name of each process id
+     * @param compact write batched starts as one "time:processName:count" line
+     */
+    public TextTraceWriter(WritableByteChannel channel, IntFunction<String> processNames, boolean compact) {
+        this.channel = channel;
+        this.processNames = processNames;
+        this.compact = compact;
+    }
+
+    @Override
+    public void accept(int time, int process) {
+        putEntry(time, process);
+        put(NEWLINE, 0, NEWLINE.length);
+    }
+
+    @Override
+    public void accept(int time, int process, int count) {
+        if (!compact || count == 1) {
+            TraceSink.super.accept(time, process, count);
+            return;
+        }
+        putEntry(time, process);
+        put((byte) ':');
+        int digitCount = formatDigits(count);
+        put(digits, digits.length - digitCount, digitCount);
+        put(NEWLINE, 0, NEWLINE.length);
+    }
+
+    private void putEntry(int time, int process) {
+        byte[] name = encodedName(process);
+        int digitCount = formatDigits(time);
+        put(digits, digits.length - digitCount, digitCount);
+        put((byte) ':');
+        put(name, 0, name.length);
+    }
+
+    private byte[] encodedName(int process) {
+        if (process >= encodedNames.length) {
+            byte[][] grown = new byte[Math.max(process + 1, encodedNames.length * 2)][];
+            System.arraycopy(encodedNames, 0, grown, 0, encodedNames.length);
+            encodedNames = grown;
+        }
+        byte[] name = encodedNames[process];
+        if (name == null) {
+            name = processNames.apply(process).getBytes(StandardCharsets.UTF_8);
+            encodedNames[process] = name;
+        }
+        return name;
+    }
+
+    /**
+     * Writes the decimal digits of the value right-aligned into {@link #digits}.
+     *
+     * @return number of bytes used
+     */
+    private int formatDigits(int value) {
+        long v = value;
+        boolean negative = v < 0;
+        if (negative) v = -v;
+        int pos = digits.length;
+        do {
+            digits[--pos] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        if (negative) digits[--pos] = '-';
+        return digits.length - pos;
+    }
+
+    private void put(byte b) {
+        if (!buffer.hasRemaining()) flush();
+        buffer.put(b);
+    }
+
+    private void put(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            if (!buffer.hasRemaining()) flush();
+            int n = Math.min(length, buffer.remaining());
+            buffer.put(bytes, offset, n);
+            offset += n;
+            length -= n;
+        }
+    }
+
+    private void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) channel.write(buffer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() {
+        try {
+            flush();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
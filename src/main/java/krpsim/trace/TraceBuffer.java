@@ -0,0 +1,71 @@
+package krpsim.trace;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/**
+ * In-memory trace kept as packed (time, process id) pairs.
+ *
+ * It is a read-only {@code List<String>} of "time:processName" lines, but
+ * each line is formatted on access, so a long trace costs 8 bytes per entry
+ * instead of one string per line.
+ */
+public final class TraceBuffer extends AbstractList<String> implements TraceSink {
+
+    private final IntFunction<String> processNames;
+    private int[] times = new int[16];
+    private int[] processes = new int[16];
+    private int size;
+
+    /**
+     * @param processNames process name of each process id
+     */
+    public TraceBuffer(IntFunction<String> processNames) {
+        this.processNames = processNames;
+    }
+
+    @Override
+    public void accept(int time, int process) {
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            processes = Arrays.copyOf(processes, size * 2);
+        }
+        times[size] = time;
+        processes[size] = process;
+        size++;
+    }
+
+    @Override
+    public String get(int index) {
+        return time(index) + ":" + processNames.apply(process(index));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    public int time(int index) {
+        checkIndex(index);
+        return times[index];
+    }
+
+    public int process(int index) {
+        checkIndex(index);
+        return processes[index];
+    }
+
+    /**
+     * Feeds every entry, in order, to the sink.
+     */
+    public void replay(TraceSink sink) {
+        for (int i = 0; i < size; i++) sink.accept(times[i], processes[i]);
+    }
+
+    private void checkIndex(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+    }
+}
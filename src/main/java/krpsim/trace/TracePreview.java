@@ -0,0 +1,72 @@
+package krpsim.trace;
+
+import java.io.PrintStream;
+import java.util.function.IntFunction;
+
+/**
+ * Prints the first lines of a trace and counts the rest.
+ */
+public final class TracePreview implements TraceSink {
+
+    private final PrintStream out;
+    private final IntFunction<String> processNames;
+    private final int maxLines;
+    private long count;
+
+    /**
+     * @param out stream receiving the preview lines
+     * @param processNames process name of each process id
+     * @param maxLines number of lines to print
+     */
+    public TracePreview(PrintStream out, IntFunction<String> processNames, int maxLines) {
+        this.out = out;
+        this.processNames = processNames;
+        this.maxLines = maxLines;
+    }
+
+    @Override
+    public void accept(int time, int process) {
+        if (count < maxLines) {
+            out.println(time + ":" + processNames.apply(process));
+        }
+        count++;
+    }
+
+    /**
+     * Prints what is still missing from the preview and only counts the rest.
+     */
+    @Override
+    public void accept(int time, int process, int count) {
+        int printed = 0;
+        for (; printed < count && this.count < maxLines; printed++) accept(time, process);
+        this.count += count - printed;
+    }
+
+    /**
+     * Prints what is still missing from the preview and only counts the rest.
+     */
+    @Override
+    public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period, long repetitions) {
+        long j = 0;
+        for (; j < repetitions && count < maxLines; j++) {
+            for (int i = 0; i < length; i++) accept((int) (times[i] + j * period), processes[i], counts[i]);
+        }
+        long perRepetition = 0;
+        for (int i = 0; i < length; i++) perRepetition += counts[i];
+        count += perRepetition * (repetitions - j);
+    }
+
+    /**
+     * @return number of entries seen, printed or not
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return number of entries that were not printed
+     */
+    public long truncated() {
+        return Math.max(0, count - maxLines);
+    }
+}
@@ -0,0 +1,105 @@
+package krpsim.trace;
+
+/**
+ * Consumer of trace entries, one per process start.
+ *
+ * Entries are (start time, process id) pairs; sinks format them only when
+ * and if they need text, so producers never build per-line strings.
+ * I/O failures are reported as {@link java.io.UncheckedIOException}.
+ */
+public interface TraceSink extends AutoCloseable {
+
+    /**
+     * Records one process start.
+     *
+     * @param time start time
+     * @param process process id (index in the configuration's process list)
+     */
+    void accept(int time, int process);
+
+    /**
+     * Records {@code count} instances of a process started together. The
+     * default expands them into as many {@link #accept(int, int)} calls; sinks
+     * with a compact form for batched starts override it.
+     *
+     * @param count number of instances, at least 1
+     */
+    default void accept(int time, int process, int count) {
+        for (int i = 0; i < count; i++) accept(time, process);
+    }
+
+    /**
+     * Records a block of starts that repeats with a fixed period: entry i of
+     * repetition j starts {@code counts[i]} instances at
+     * {@code times[i] + j * period}, for j in [0, repetitions). Producers use it
+     * after skipping repetitions of a periodic schedule; the default expands it
+     * into {@link #accept(int, int, int)} calls, so the trace stays exact, and
+     * sinks that only need counts can override it.
+     *
+     * @param times start times of the first repetition
+     * @param processes process ids, parallel to {@code times}
+     * @param counts instance counts, parallel to {@code times}
+     * @param length number of entries per repetition
+     * @param period time between two repetitions
+     * @param repetitions number of repetitions
+     */
+    default void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period, long repetitions) {
+        for (long j = 0; j < repetitions; j++) {
+            long shift = j * period;
+            for (int i = 0; i < length; i++) accept((int) (times[i] + shift), processes[i], counts[i]);
+        }
+    }
+
+    /**
+     * Flushes and releases resources. The default does nothing.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * @return sink forwarding every entry to all the given sinks, in order
+     */
+    static TraceSink tee(TraceSink... sinks) {
+        return new TraceSink() {
+            @Override
+            public void accept(int time, int process) {
+                for (TraceSink s : sinks) s.accept(time, process);
+            }
+
+            @Override
+            public void accept(int time, int process, int count) {
+                for (TraceSink s : sinks) s.accept(time, process, count);
+            }
+
+            @Override
+            public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period, long repetitions) {
+                for (TraceSink s : sinks) s.acceptRepeated(times, processes, counts, length, period, repetitions);
+            }
+
+            @Override
+            public void close() {
+                for (TraceSink s : sinks) s.close();
+            }
+        };
+    }
+
+    /**
+     * @return sink dropping every entry, repeated blocks included, in constant time
+     */
+    static TraceSink discard() {
+        return new TraceSink() {
+            @Override
+            public void accept(int time, int process) {
+            }
+
+            @Override
+            public void accept(int time, int process, int count) {
+            }
+
+            @Override
+            public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period, long repetitions) {
+            }
+        };
+    }
+}
@@ -0,0 +1,291 @@
+package krpsim.utils;
+
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import krpsim.model.Process;
+
+/**
+ * Single-pass lexer over the bytes of a configuration file.
+ *
+ * Each line is trimmed and tried, in order, as a stock line, a process line and
+ * an optimize line, with the same shapes the format has always accepted:
+ *
+ * <pre>
+ *   stock    := name ':' digits               name without '#', ':', '(' or ')'
+ *   process  := name ':(' map '):(' map '):' digits    name without '#' or ':'
+ *   optimize := 'optimize:(' targets ')'
+ * </pre>
+ *
+ * Every structural character is ASCII, so lines are scanned byte by byte and
+ * only names are decoded. Lines of no known shape, and map entries that are not
+ * a single {@code name:quantity} pair, are ignored. A number that cannot be read
+ * in a recognized line is reported with its line and column.
+ *
+ * Resource names are decoded once per distinct byte sequence, so a resource
+ * used by many processes is a single shared String.
+ */
+final class ConfigLexer {
+
+    private static final byte[] OPTIMIZE_PREFIX = "optimize:(".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private final String source;
+    private final byte[] buf;
+    private final Charset charset;
+
+    private final Map<String, Integer> stocks = new HashMap<>();
+    private final List<Process> processes = new ArrayList<>();
+    private final Set<String> optimizeTargets = new HashSet<>();
+
+    // Position of the current line, for error messages.
+    private int lineNumber;
+    private int lineStart;
+
+    // Open-addressing table of decoded resource names, keyed by their bytes.
+    private int[] nameOffsets = new int[256];
+    private int[] nameLengths = new int[256];
+    private String[] names = new String[256];
+    private int nameCount;
+
+    /**
+     * @param source file name used in error messages
+     * @param buf whole file content
+     * @param charset encoding of names
+     */
+    ConfigLexer(String source, byte[] buf, Charset charset) {
+        this.source = source;
+        this.buf = buf;
+        this.charset = charset;
+    }
+
+    Parser.Config lex() throws ConfigSyntaxException {
+        int n = buf.length;
+        int pos = 0;
+        while (pos < n) {
+            int end = pos;
+            while (end < n && buf[end] != '\n' && buf[end] != '\r') end++;
+            lineNumber++;
+            lineStart = pos;
+            line(pos, end);
+            // A line ends with "\n", "\r" or "\r\n".
+            pos = end + 1;
+            if (end < n && buf[end] == '\r' && pos < n && buf[pos] == '\n') pos++;
+        }
+        return new Parser.Config(stocks, processes, optimizeTargets);
+    }
+
+    private void line(int s, int e) throws ConfigSyntaxException {
+        while (s < e && (buf[s] & 0xff) <= ' ') s++;
+        while (e > s && (buf[e - 1] & 0xff) <= ' ') e--;
+        if (s == e || buf[s] == '#') return;
+        if (stock(s, e)) return;
+        if (process(s, e)) return;
+        optimize(s, e);
+    }
+
+    private boolean stock(int s, int e) throws ConfigSyntaxException {
+        int colon = s;
+        while (colon < e && buf[colon] != ':' && buf[colon] != '#' && buf[colon] != '(' && buf[colon] != ')') {
+            colon++;
+        }
+        if (colon == s || colon == e || buf[colon] != ':' || !digits(colon + 1, e)) return false;
+        stocks.put(name(s, colon), number(colon + 1, e));
+        return true;
+    }
+
+    private boolean process(int s, int e) throws ConfigSyntaxException {
+        int colon = s;
+        while (colon < e && buf[colon] != ':' && buf[colon] != '#') colon++;
+        if (colon == s || colon + 1 >= e || buf[colon] != ':' || buf[colon + 1] != '(') return false;
+        int needsStart = colon + 2;
+        int needsEnd = indexOf(')', needsStart, e);
+        if (needsEnd < 0 || needsEnd + 2 >= e || buf[needsEnd + 1] != ':' || buf[needsEnd + 2] != '(') return false;
+        int resultsStart = needsEnd + 3;
+        int resultsEnd = indexOf(')', resultsStart, e);
+        if (resultsEnd < 0 || resultsEnd + 1 >= e || buf[resultsEnd + 1] != ':' || !digits(resultsEnd + 2, e)) {
+            return false;
+        }
+        String name = new String(buf, s, colon - s, charset);
+        Map<String, Integer> needs = map(needsStart, needsEnd);
+        Map<String, Integer> results = map(resultsStart, resultsEnd);
+        processes.add(new Process(name, needs, results, number(resultsEnd + 2, e)));
+        return true;
+    }
+
+    private void optimize(int s, int e) {
+        int from = s + OPTIMIZE_PREFIX.length;
+        if (from >= e || buf[e - 1] != ')'
+                || !Arrays.equals(buf, s, from, OPTIMIZE_PREFIX, 0, OPTIMIZE_PREFIX.length)) {
+            return;
+        }
+        int to = e - 1;
+        if (from == to) {
+            optimizeTargets.add("");
+            return;
+        }
+        // Empty targets after the last non-empty one are dropped; earlier ones are kept.
+        while (to > from && buf[to - 1] == ';') to--;
+        if (to == from) return;
+        for (int part = from; ; ) {
+            int sep = indexOf(';', part, to);
+            int end = sep < 0 ? to : sep;
+            optimizeTargets.add(trimmedName(part, end));
+            if (sep < 0) break;
+            part = sep + 1;
+        }
+    }
+
+    /**
+     * Reads a ';'-separated list of name:quantity pairs. Entries that are not
+     * exactly one pair (ignoring trailing ':') are skipped.
+     */
+    private Map<String, Integer> map(int from, int to) throws ConfigSyntaxException {
+        Map<String, Integer> map = new HashMap<>();
+        if (isBlank(from, to)) return map;
+        for (int part = from; part <= to; ) {
+            int sep = indexOf(';', part, to);
+            int end = sep < 0 ? to : sep;
+            int last = end;
+            while (last > part && buf[last - 1] == ':') last--;
+            int colon = indexOf(':', part, last);
+            if (colon >= 0 && indexOf(':', colon + 1, last) < 0) {
+                map.put(trimmedName(part, colon), quantity(colon + 1, last));
+            }
+            if (sep < 0) break;
+            part = sep + 1;
+        }
+        return map;
+    }
+
+    /**
+     * Parses a trimmed, optionally signed quantity.
+     */
+    private int quantity(int from, int to) throws ConfigSyntaxException {
+        while (from < to && (buf[from] & 0xff) <= ' ') from++;
+        while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+        boolean negative = from < to && buf[from] == '-';
+        int start = from < to && (buf[from] == '-' || buf[from] == '+') ? from + 1 : from;
+        if (digits(start, to)) {
+            long value = 0;
+            for (int i = start; i < to && value <= Integer.MAX_VALUE + 1L; i++) {
+                value = value * 10 + (buf[i] - '0');
+            }
+            if (negative) value = -value;
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) return (int) value;
+            throw error(from, "quantity out of range: " + text(from, to));
+        }
+        // Non-ASCII digits are still numbers to Integer.parseInt.
+        try {
+            return Integer.parseInt(text(from, to));
+        } catch (NumberFormatException ex) {
+            throw error(from, "invalid quantity '" + text(from, to) + "'");
+        }
+    }
+
+    /**
+     * Parses an unsigned run of digits already checked by {@link #digits}.
+     */
+    private int number(int from, int to) throws ConfigSyntaxException {
+        long value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (buf[i] - '0');
+            if (value > Integer.MAX_VALUE) throw error(from, "number out of range: " + text(from, to));
+        }
+        return (int) value;
+    }
+
+    /**
+     * @return true if the range is a non-empty run of ASCII digits
+     */
+    private boolean digits(int from, int to) {
+        if (from >= to) return false;
+        for (int i = from; i < to; i++) {
+            if (buf[i] < '0' || buf[i] > '9') return false;
+        }
+        return true;
+    }
+
+    private boolean isBlank(int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] < 0) return text(from, to).isBlank();
+            if (!Character.isWhitespace(buf[i])) return false;
+        }
+        return true;
+    }
+
+    private int indexOf(char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == c) return i;
+        }
+        return -1;
+    }
+
+    private String text(int from, int to) {
+        return new String(buf, from, to - from, charset);
+    }
+
+    private String trimmedName(int from, int to) {
+        while (from < to && (buf[from] & 0xff) <= ' ') from++;
+        while (to > from && (buf[to - 1] & 0xff) <= ' ') to--;
+        return name(from, to);
+    }
+
+    /**
+     * @return decoded resource name, shared by every occurrence of the same bytes
+     */
+    private String name(int from, int to) {
+        int length = to - from;
+        int hash = 1;
+        for (int i = from; i < to; i++) hash = 31 * hash + buf[i];
+        int mask = names.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            String known = names[slot];
+            if (known == null) {
+                String name = text(from, to);
+                names[slot] = name;
+                nameOffsets[slot] = from;
+                nameLengths[slot] = length;
+                if (++nameCount * 2 > names.length) growNames();
+                return name;
+            }
+            int offset = nameOffsets[slot];
+            if (nameLengths[slot] == length && Arrays.equals(buf, offset, offset + length, buf, from, to)) {
+                return known;
+            }
+        }
+    }
+
+    private void growNames() {
+        int[] oldOffsets = nameOffsets;
+        int[] oldLengths = nameLengths;
+        String[] oldNames = names;
+        nameOffsets = new int[oldNames.length * 2];
+        nameLengths = new int[oldNames.length * 2];
+        names = new String[oldNames.length * 2];
+        int mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] == null) continue;
+            int hash = 1;
+            for (int k = oldOffsets[i], end = k + oldLengths[i]; k < end; k++) hash = 31 * hash + buf[k];
+            int slot = mix(hash) & mask;
+            while (names[slot] != null) slot = (slot + 1) & mask;
+            names[slot] = oldNames[i];
+            nameOffsets[slot] = oldOffsets[i];
+            nameLengths[slot] = oldLengths[i];
+        }
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private ConfigSyntaxException error(int position, String message) {
+        return new ConfigSyntaxException(source, lineNumber, position - lineStart + 1, message);
+    }
+}
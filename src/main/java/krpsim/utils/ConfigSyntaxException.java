@@ -0,0 +1,30 @@
+package krpsim.utils;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a configuration line has the shape of a stock or process line
+ * but one of its numbers cannot be read.
+ *
+ * The message starts with {@code file:line:column}, both 1-based; the column
+ * counts bytes from the start of the line.
+ */
+public class ConfigSyntaxException extends IOException {
+
+    private final int line;
+    private final int column;
+
+    public ConfigSyntaxException(String source, int line, int column, String message) {
+        super(source + ":" + line + ":" + column + ": " + message);
+        this.line = line;
+        this.column = column;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getColumn() {
+        return column;
+    }
+}
@@ -190,10 +190,11 @@ public class ResourceGraphPanel extends JPanel {
         List<ResourceSnapshot> history = new ArrayList<>();
         Map<String, Integer> stocks = new LinkedHashMap<>(config.initialStocks());
         PriorityQueue<Event> active = new PriorityQueue<>();
-        Map<String, Process> processMap = new HashMap<>();
+        List<Process> processes = config.processes();
+        Map<String, Integer> processIds = new HashMap<>();
         
-        for (var p : config.processes()) {
-            processMap.put(p.name(), p);
+        for (int i = 0; i < processes.size(); i++) {
+            processIds.putIfAbsent(processes.get(i).name(), i);
         }
         
         // Add initial snapshot
@@ -210,20 +211,19 @@ public class ResourceGraphPanel extends JPanel {
             while (!active.isEmpty() && active.peek().time() <= startTime) {
                 Event e = active.poll();
                 currentTime = e.time();
-                Process p = processMap.get(e.processName());
-                if (p != null) {
-                    p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
-                    history.add(new ResourceSnapshot(currentTime, stocks));
-                }
+                Process p = processes.get(e.process());
+                p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
+                history.add(new ResourceSnapshot(currentTime, stocks));
             }
             
             // Start new process
             currentTime = startTime;
-            Process p = processMap.get(processName);
-            if (p != null) {
+            Integer id = processIds.get(processName);
+            if (id != null) {
+                Process p = processes.get(id);
                 p.needs().forEach((k, v) -> stocks.merge(k, -v, Integer::sum));
                 history.add(new ResourceSnapshot(currentTime, stocks));
-                active.add(new Event(startTime + p.delay(), processName));
+                active.add(new Event(startTime + p.delay(), id));
             }
         }
         
@@ -231,11 +231,9 @@ public class ResourceGraphPanel extends JPanel {
         while (!active.isEmpty()) {
             Event e = active.poll();
             currentTime = e.time();
-            Process p = processMap.get(e.processName());
-            if (p != null) {
-                p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
-                history.add(new ResourceSnapshot(currentTime, stocks));
-            }
+            Process p = processes.get(e.process());
+            p.results().forEach((k, v) -> stocks.merge(k, v, Integer::sum));
+            history.add(new ResourceSnapshot(currentTime, stocks));
         }
         
         return history;
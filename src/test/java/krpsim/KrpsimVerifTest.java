@@ -0,0 +1,55 @@
+package krpsim;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import krpsim.model.CompiledModel;
+import krpsim.optimizer.GreedyOptimizer;
+import krpsim.trace.TextTraceWriter;
+import krpsim.trace.TraceSink;
+import krpsim.utils.Parser;
+
+class KrpsimVerifTest {
+
+    private static final String GROW = "a:1000000000\ngrow:(a:1):(a:3):1\noptimize:(a)\n";
+
+    @TempDir
+    Path dir;
+
+    private static CompiledModel compile(String text) throws Exception {
+        return CompiledModel.compile(Parser.parse("grow", text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static boolean verify(CompiledModel model, Path trace, ByteArrayOutputStream out) throws Exception {
+        return KrpsimVerif.verifyFile(model, trace, new PrintStream(out, true, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void rejectsStartWhoseResultsOverflow() throws Exception {
+        Path trace = dir.resolve("trace.txt");
+        Files.writeString(trace, "0:grow:1000000000\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertFalse(verify(compile(GROW), trace, out));
+        assertTrue(out.toString(StandardCharsets.UTF_8).contains("would exceed"), out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void acceptsBatchedGreedyTrace() throws Exception {
+        CompiledModel model = compile(GROW);
+        Path trace = dir.resolve("trace.txt");
+        try (TraceSink writer = new TextTraceWriter(trace, model::processName, true)) {
+            new GreedyOptimizer(true).optimize(model, 50, writer);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(verify(model, trace, out), out.toString(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,69 @@
+package krpsim.model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import krpsim.optimizer.GreedyOptimizer;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.utils.Parser;
+
+class SimulationTest {
+
+    private static final int PROCESSES = 12000;
+
+    /**
+     * Processes with decreasing delays, all started at time 0: their events
+     * merge into a heap whose left chain holds every one of them.
+     */
+    private static Parser.Config deepConfig() throws Exception {
+        StringBuilder text = new StringBuilder("a:" + PROCESSES + "\n");
+        for (int i = 0; i < PROCESSES; i++) {
+            text.append('p').append(i).append(":(a:1):(b:1):").append(PROCESSES - i).append('\n');
+        }
+        text.append("optimize:(b)\n");
+        return Parser.parse("deep", text.toString().getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void greedyRunsOnDeepEventHeap() throws Exception {
+        OptimizationResult result = new GreedyOptimizer().optimize(CompiledModel.compile(deepConfig()), 100000);
+        assertTrue(result.finished());
+        assertEquals(PROCESSES, result.finalTime());
+        assertEquals(PROCESSES, result.finalStocks().get("b"));
+    }
+
+    @Test
+    void projectedStocksOnDeepEventHeap() throws Exception {
+        CompiledModel model = CompiledModel.compile(deepConfig());
+        Simulation sim = new Simulation(model);
+        for (int p = 0; p < PROCESSES; p++) sim.start(p);
+        int[] projected = sim.projectedStocks();
+        assertEquals(0, projected[model.resourceIndex("a")]);
+        assertEquals(PROCESSES, projected[model.resourceIndex("b")]);
+    }
+
+    @Test
+    void fittingInstancesBoundsPendingResults() throws Exception {
+        byte[] text = "a:1000000000\ngrow:(a:1):(a:3):1\noptimize:(a)\n".getBytes(StandardCharsets.US_ASCII);
+        CompiledModel model = CompiledModel.compile(Parser.parse("grow", text));
+        Simulation sim = new Simulation(model);
+        long fitting = sim.fittingInstances(0);
+        assertEquals((Integer.MAX_VALUE - 1_000_000_000L) / 2, fitting);
+        sim.start(0, 0, (int) fitting);
+        assertEquals(0, sim.fittingInstances(0));
+        sim.completeAll();
+        assertTrue(sim.stock(0) > 0);
+    }
+
+    @Test
+    void batchedStartThrowsInsteadOfWrapping() throws Exception {
+        byte[] text = "a:1000000000\ngrow:(a:1):(a:3):1\noptimize:(a)\n".getBytes(StandardCharsets.US_ASCII);
+        Simulation sim = new Simulation(CompiledModel.compile(Parser.parse("grow", text)));
+        assertThrows(ArithmeticException.class, () -> sim.start(0, 0, 1_000_000_000));
+    }
+}
@@ -0,0 +1,53 @@
+package krpsim.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import krpsim.model.CompiledModel;
+import krpsim.optimizer.OptimizationStrategy.OptimizationResult;
+import krpsim.trace.TraceSink;
+import krpsim.utils.Parser;
+
+class GreedyOptimizerTest {
+
+    private static CompiledModel compile(String text) throws Exception {
+        return CompiledModel.compile(Parser.parse("test", text.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Test
+    void batchedStartsSaturateInsteadOfWrapping() throws Exception {
+        // Each start triples its input, so batched starts outgrow the int range within a few ticks.
+        CompiledModel model = compile("a:1000000000\ngrow:(a:1):(a:3):1\noptimize:(a)\n");
+        TraceSink discard = (time, process) -> { };
+        OptimizationResult result = new GreedyOptimizer(true).optimize(model, 50, discard);
+        int a = result.finalStocks().get("a");
+        assertTrue(a > 1_000_000_000, "a=" + a);
+    }
+
+    @Test
+    void periodicScheduleIsSkippedExactly() throws Exception {
+        // One start per tick for a billion ticks: only the cycle detector makes this finish.
+        CompiledModel model = compile("a:1\nstep:(a:1):(a:1;b:1):1\noptimize:(b)\n");
+        int maxDelay = 1_000_000_000;
+        long[] starts = new long[1];
+        TraceSink counter = new TraceSink() {
+            @Override
+            public void accept(int time, int process) {
+                starts[0]++;
+            }
+
+            @Override
+            public void acceptRepeated(int[] times, int[] processes, int[] counts, int length, int period,
+                                       long repetitions) {
+                for (int i = 0; i < length; i++) starts[0] += counts[i] * repetitions;
+            }
+        };
+        OptimizationResult result = new GreedyOptimizer().optimize(model, maxDelay, counter);
+        assertEquals(maxDelay + 1L, starts[0]);
+        assertEquals(maxDelay + 1, result.finalStocks().get("b"));
+    }
+}